@@ -52,6 +52,28 @@ public class MainAppConfig {
     private String mysqlUser;
     @Value("${mysql.pwd}")
     private String mysqlPwd;
+    @Value("${relationship.index.enabled:false}")
+    private boolean relationshipIndexEnabled;
+    @Value("${relationship.snapshot.file:}")
+    private String relationshipSnapshotFile;
+    @Value("${pairwise.batch.max.terms:" + ServiceConfig.DEFAULT_BATCH_MAX_TERMS + "}")
+    private int batchMaxTerms;
+    @Value("${pairwise.batch.threads:0}")
+    private int batchThreads;
+    @Value("${relationship.cache.max.bytes:67108864}")
+    private long relationshipCacheMaxBytes;
+    @Value("${enrichment.cache.max.bytes:16777216}")
+    private long enrichmentCacheMaxBytes;
+    @Value("${network.layout.cache.max.bytes:8388608}")
+    private long networkLayoutCacheMaxBytes;
+    @Value("${pairwise.admin.token:}")
+    private String adminToken;
+    @Value("${warmup.enabled:true}")
+    private boolean warmUpEnabled;
+    @Value("${combined.score.matrix.enabled:false}")
+    private boolean combinedScoreMatrixEnabled;
+    @Value("${combined.score.matrix.file:}")
+    private String combinedScoreMatrixFile;
 
     @Bean
     public MongoClient mongoClient() {
@@ -75,6 +97,17 @@ public class MainAppConfig {
     	ServiceConfig config = new ServiceConfig();
     	config.setCoreWSURL(coreWSUrl);
     	config.setEventHierarchyUrl(eventHierarchyUrl);
+    	config.setRelationshipIndexEnabled(relationshipIndexEnabled);
+    	config.setRelationshipSnapshotFile(relationshipSnapshotFile);
+    	config.setBatchMaxTerms(batchMaxTerms);
+    	config.setBatchThreads(batchThreads);
+    	config.setRelationshipCacheMaxBytes(relationshipCacheMaxBytes);
+    	config.setEnrichmentCacheMaxBytes(enrichmentCacheMaxBytes);
+    	config.setNetworkLayoutCacheMaxBytes(networkLayoutCacheMaxBytes);
+    	config.setWarmUpEnabled(warmUpEnabled);
+    	config.setAdminToken(adminToken);
+    	config.setCombinedScoreMatrixEnabled(combinedScoreMatrixEnabled);
+    	config.setCombinedScoreMatrixFile(combinedScoreMatrixFile);
     	
     	return config;
     }
@@ -6,13 +6,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.bson.Document;
 import org.reactome.idg.pairwise.main.PathwayProcessor;
 import org.reactome.idg.pairwise.service.PairwiseService;
+import org.reactome.idg.pairwise.util.CombinedScores;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.reactome.idg.pairwise.util.RelationshipCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,25 +56,26 @@ public class GenerateInteractorFeaturesCSV {
 	    	writer.write(header.toString());
 	    	writer.newLine();
 	    	
-	    	//reverse index to gene name
-	    	Map<Integer,String> indexToGene = service.getIndexToGene();
+	    	//index to gene name
+	    	GeneSymbolTable symbolTable = service.getGeneSymbolTable();
 	    	Set<String> reactomeAnnotatedGenes = service.getReactomeAnnotatedGenes();
 	    	
 	    	//get list of all gene names sorted and iterate over them
-			service.getIndexToGene().values().stream().sorted().collect(Collectors.toList()).forEach(gene -> {
+			symbolTable.getSymbols().stream().sorted().collect(Collectors.toList()).forEach(gene -> {
 		    	
 				Document geneDoc = service.getRelationshipDocForGene(gene);
 				if(geneDoc == null) return;
 				
 				//assumes combined_score includes every interactor of gene
-				for(Map.Entry<String, Object> entry: ((Document)geneDoc.get("combined_score")).entrySet()){
-					if(entry.getKey().equals("null")) continue;
+				CombinedScores combinedScores = CombinedScores.decode(geneDoc.get("combined_score"));
+				if(combinedScores == null) return;
+				for(int i = 0; i < combinedScores.size(); i++){
 					StringBuilder toWrite = new StringBuilder();
-					int index = Integer.parseInt(entry.getKey());
-					String interactor = indexToGene.get(index);
+					int index = combinedScores.getIndex(i);
+					String interactor = symbolTable.getSymbol(index);
 					toWrite.append(gene + "," + interactor + ",")
 						   .append(reactomeAnnotatedGenes.contains(interactor) ? "1":"0")
-						   .append((Double)entry.getValue());
+						   .append(combinedScores.getScoreAsDouble(i));
 					
 					dataDescriptions.forEach(desc -> {
 						toWrite.append(",");
@@ -81,11 +84,11 @@ public class GenerateInteractorFeaturesCSV {
 							toWrite.append("0");
 							return;
 						}
-						if(doc.containsKey("pos") && ((List<Integer>)doc.get("pos")).contains(index)) {
+						if(RelationshipCodec.contains(doc.get("pos"), index)) {
 							toWrite.append("1");
 							return;
 						}
-						if(doc.containsKey("neg") && ((List<Integer>)doc.get("neg")).contains(index)) {
+						if(RelationshipCodec.contains(doc.get("neg"), index)) {
 							toWrite.append("-1");
 							return;
 						}
@@ -1,6 +1,7 @@
 package org.reactome.idg.pairwise.main;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -14,6 +15,7 @@ import org.reactome.idg.pairwise.generators.GenerateInteractorFeaturesCSV;
 import org.reactome.idg.pairwise.model.DataDesc;
 import org.reactome.idg.pairwise.model.PairwiseRelationship;
 import org.reactome.idg.pairwise.service.PairwiseService;
+import org.reactome.idg.pairwise.service.PathwayService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
@@ -34,6 +36,13 @@ public class MainApp {
 //    	  addReactomeAnnotatedGenesCollection();
 //    	generateFeatureCSV();
 //    	addPathwayToGenesAndWeightedTDL();
+//    	migrateRelationshipEncoding();
+//    	migrateCombinedScores();
+//    	regeneratePrdHistograms();
+//    	precomputeEnrichment(args);
+//    	exportRelationshipSnapshot(args);
+//    	exportCombinedScoreMatrix(args);
+//    	regeneratePathwaySnapshot();
     }
     
     private static void pushMLFeatureIntoDB() {
@@ -149,6 +158,98 @@ public class MainApp {
     	context.close();
     }
     
+    /**
+     * Convert pos and neg lists in the relationships collection into the compact binary format.
+     */
+    private static void migrateRelationshipEncoding() {
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	service.migrateRelationshipEncoding();
+    	context.close();
+    }
+    
+    /**
+     * Convert combined_score sub-documents into the score-sorted binary format.
+     */
+    private static void migrateCombinedScores() {
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	service.migrateCombinedScores();
+    	context.close();
+    }
+    
+    /**
+     * Regenerate PRD histograms from combined scores already in the database.
+     */
+    private static void regeneratePrdHistograms() {
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	service.regeneratePrdHistograms();
+    	context.close();
+    }
+    
+    /**
+     * Precompute enriched pathways of combined score interactors for all genes.
+     * @param args PRD cutoffs. 0.9, the default of the web app, is used if no cutoff is passed.
+     */
+    private static void precomputeEnrichment(String[] args) {
+    	List<Double> cutoffs = new ArrayList<>();
+    	for(String arg : args)
+    		cutoffs.add(Double.parseDouble(arg));
+    	if(cutoffs.size() == 0)
+    		cutoffs.add(0.9d);
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	service.precomputeEnrichment(cutoffs);
+    	context.close();
+    }
+    
+    /**
+     * Save pathways and their genes collected from MySQL as the snapshot of the current release so
+     * that the web app doesn't need to go through MySQL. This should be run after a new release is
+     * loaded into MySQL.
+     */
+    private static void regeneratePathwaySnapshot() {
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PathwayService service = context.getBean(PathwayService.class);
+    	service.regeneratePathwaySnapshot();
+    	context.close();
+    }
+    
+    /**
+     * Export the relationships into a snapshot file to be memory-mapped by the web app.
+     * @param args the first argument is the output file name.
+     */
+    private static void exportRelationshipSnapshot(String[] args) {
+    	if(args.length < 1) return;
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	try {
+    		service.exportRelationshipSnapshot(new File(args[0]));
+    	}
+    	catch(IOException e) {
+    		logger.error("Cannot export relationship snapshot: " + e.getMessage(), e);
+    	}
+    	context.close();
+    }
+    
+    /**
+     * Export combined scores into a matrix file to be memory-mapped by the web app.
+     * @param args the first argument is the output file name.
+     */
+    private static void exportCombinedScoreMatrix(String[] args) {
+    	if(args.length < 1) return;
+    	AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+    	PairwiseService service = context.getBean(PairwiseService.class);
+    	try {
+    		service.exportCombinedScoreMatrix(new File(args[0]));
+    	}
+    	catch(IOException e) {
+    		logger.error("Cannot export combined score matrix: " + e.getMessage(), e);
+    	}
+    	context.close();
+    }
+    
     /**
      * For some data distribution test.
      * @param service
@@ -81,6 +81,10 @@ public class PRDPredictionProcessor {
 		logger.info("Inserting combined_scores for each relationship document");
 		service.insertCombinedScore(geneToCombinedScore.values());
 		logger.info("Finished adding combined scores.");
+		
+		logger.info("Generating PRD histograms...");
+		service.regeneratePrdHistograms();
+		logger.info("Finished generating PRD histograms.");
 	}
 
 	private Map<String, String> loadUnderscoreToTabMap(String folder, String file){
@@ -12,13 +12,12 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.reactome.idg.pairwise.service.PairwiseService;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
 
 /**
  * 
@@ -109,7 +108,7 @@ public class PathwayProcessor {
 	 */
 	private void processGenePathwayRelationship(Map<String, List<String>> pathwayStIdToGeneNameList,
 												PairwiseService service) {
-		Map<String, Integer> geneToIndex = service.getIndexToGene().entrySet().stream().collect(Collectors.toMap(Entry::getValue, Entry::getKey));
+		GeneSymbolTable symbolTable = service.getGeneSymbolTable();
 		
 		//Will be persisted into pathways table of mongoDb
 		Map<String, List<Integer>> pathwayToGeneIndexList = new HashMap<>();
@@ -123,7 +122,8 @@ public class PathwayProcessor {
 			List<Integer> geneIndexes = new ArrayList<>();
 			v.forEach(gene -> {
 				//add gene index to list for placement on pathwayToGeneIndexList
-				geneIndexes.add(geneToIndex.get(gene));
+				int geneIndex = symbolTable.getIndex(gene);
+				if(geneIndex >= 0) geneIndexes.add(geneIndex);
 				//next to lines for building geneToPathwayIndexList
 				if(!geneToPathwayIndexList.containsKey(gene)) geneToPathwayIndexList.put(gene, new HashSet<>());
 				if(!geneToPathwayIndexList.get(gene).contains(pathwayToIndex.get(k))) geneToPathwayIndexList.get(gene).add(pathwayToIndex.get(k));
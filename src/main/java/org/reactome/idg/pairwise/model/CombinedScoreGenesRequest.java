@@ -0,0 +1,36 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.List;
+
+/**
+ * Request for genes having combined scores above a cutoff with any of a set of terms.
+ */
+public class CombinedScoreGenesRequest {
+	
+	private List<String> terms;
+	private Double prd;
+	
+	public CombinedScoreGenesRequest() {
+	}
+	
+	public CombinedScoreGenesRequest(List<String> terms, Double prd) {
+		this.terms = terms;
+		this.prd = prd;
+	}
+
+	public List<String> getTerms() {
+		return terms;
+	}
+
+	public void setTerms(List<String> terms) {
+		this.terms = terms;
+	}
+
+	public Double getPrd() {
+		return prd;
+	}
+
+	public void setPrd(Double prd) {
+		this.prd = prd;
+	}
+}
@@ -0,0 +1,52 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of the interactors of a term ordered by descending combined scores.
+ */
+public class CombinedScorePage {
+
+	private String term;
+	// The number of interactors passing the minimum score in all pages
+	private int total;
+	private int offset;
+	private List<InteractorScore> interactors;
+	
+	public CombinedScorePage() {
+		interactors = new ArrayList<>();
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public void setTerm(String term) {
+		this.term = term;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	public int getOffset() {
+		return offset;
+	}
+
+	public void setOffset(int offset) {
+		this.offset = offset;
+	}
+
+	public List<InteractorScore> getInteractors() {
+		return interactors;
+	}
+
+	public void setInteractors(List<InteractorScore> interactors) {
+		this.interactors = interactors;
+	}
+}
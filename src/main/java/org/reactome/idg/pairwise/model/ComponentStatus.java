@@ -0,0 +1,64 @@
+package org.reactome.idg.pairwise.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Load status of one component of reference data warmed up at startup.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ComponentStatus {
+	
+	public enum State {
+		PENDING,
+		LOADING,
+		READY,
+		FAILED
+	}
+	
+	private String name;
+	private State state;
+	// Milliseconds spent in loading, including waiting for components it depends on
+	private Long duration;
+	private String error;
+	
+	public ComponentStatus() {
+	}
+	
+	public ComponentStatus(String name) {
+		this.name = name;
+		this.state = State.PENDING;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	public void setState(State state) {
+		this.state = state;
+	}
+
+	public Long getDuration() {
+		return duration;
+	}
+
+	public void setDuration(Long duration) {
+		this.duration = duration;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+}
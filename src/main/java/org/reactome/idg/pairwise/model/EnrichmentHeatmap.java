@@ -0,0 +1,69 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.List;
+
+/**
+ * Enrichment of the interactors of a term in each DataDesc as a DataDesc x pathway matrix. Rows
+ * follow descIds and columns follow pathways. A cell is null if the pathway has no hit in the DataDesc.
+ */
+public class EnrichmentHeatmap {
+	
+	private String term;
+	private List<String> descIds;
+	// Stable ids of pathways enriched in any DataDesc
+	private List<String> pathways;
+	private List<String> pathwayNames;
+	private List<List<Double>> pValues;
+	private List<List<Double>> fdrs;
+	
+	public EnrichmentHeatmap() {
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public void setTerm(String term) {
+		this.term = term;
+	}
+
+	public List<String> getDescIds() {
+		return descIds;
+	}
+
+	public void setDescIds(List<String> descIds) {
+		this.descIds = descIds;
+	}
+
+	public List<String> getPathways() {
+		return pathways;
+	}
+
+	public void setPathways(List<String> pathways) {
+		this.pathways = pathways;
+	}
+
+	public List<String> getPathwayNames() {
+		return pathwayNames;
+	}
+
+	public void setPathwayNames(List<String> pathwayNames) {
+		this.pathwayNames = pathwayNames;
+	}
+
+	public List<List<Double>> getpValues() {
+		return pValues;
+	}
+
+	public void setpValues(List<List<Double>> pValues) {
+		this.pValues = pValues;
+	}
+
+	public List<List<Double>> getFdrs() {
+		return fdrs;
+	}
+
+	public void setFdrs(List<List<Double>> fdrs) {
+		this.fdrs = fdrs;
+	}
+}
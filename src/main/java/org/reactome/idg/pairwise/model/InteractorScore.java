@@ -0,0 +1,30 @@
+package org.reactome.idg.pairwise.model;
+
+public class InteractorScore {
+
+	private String gene;
+	private Double score;
+	
+	public InteractorScore() {/*Nothing Here*/}
+	
+	public InteractorScore(String gene, Double score) {
+		this.gene = gene;
+		this.score = score;
+	}
+
+	public String getGene() {
+		return gene;
+	}
+
+	public void setGene(String gene) {
+		this.gene = gene;
+	}
+
+	public Double getScore() {
+		return score;
+	}
+
+	public void setScore(Double score) {
+		this.score = score;
+	}
+}
@@ -16,6 +16,7 @@ public class PairwiseRelationship {
     private List<Integer> pos;
     @JsonIgnore
     private List<Integer> neg;
+    // Partners ordered by their indices in GENE_INDEX without duplicates
     private List<String> posGenes;
     private List<String> negGenes;
     // Provide numbers of partners
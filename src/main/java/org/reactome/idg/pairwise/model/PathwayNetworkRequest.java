@@ -0,0 +1,58 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.List;
+
+/**
+ * Request for a pathway network with optional limits applied while the network is built. A null limit
+ * is not applied. The limits are ignored by the unpruned network endpoint.
+ */
+public class PathwayNetworkRequest extends GeneToPathwaysRequestWrapper {
+	
+	// Most significant pathways to keep as nodes
+	private Integer maxNodes;
+	// Edges are kept in the order of their hypergeometric scores until either end reaches this number
+	private Integer maxEdgesPerNode;
+	// Edges having larger hypergeometric scores are dropped
+	private Double maxHypergeometricScore;
+	// Attach coordinates computed by the service to nodes
+	private Boolean layout;
+	
+	public PathwayNetworkRequest() {
+	}
+	
+	public PathwayNetworkRequest(String term, List<Integer> dataDescKeys, Double prd) {
+		super(term, dataDescKeys, prd);
+	}
+
+	public Integer getMaxNodes() {
+		return maxNodes;
+	}
+
+	public void setMaxNodes(Integer maxNodes) {
+		this.maxNodes = maxNodes;
+	}
+
+	public Integer getMaxEdgesPerNode() {
+		return maxEdgesPerNode;
+	}
+
+	public void setMaxEdgesPerNode(Integer maxEdgesPerNode) {
+		this.maxEdgesPerNode = maxEdgesPerNode;
+	}
+
+	public Double getMaxHypergeometricScore() {
+		return maxHypergeometricScore;
+	}
+
+	public void setMaxHypergeometricScore(Double maxHypergeometricScore) {
+		this.maxHypergeometricScore = maxHypergeometricScore;
+	}
+
+	public Boolean getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Boolean layout) {
+		this.layout = layout;
+	}
+}
@@ -0,0 +1,47 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.List;
+
+/**
+ * Enriched pathways of the combined score interactors above one PRD cutoff.
+ */
+public class PrdEnrichment {
+	
+	private Double prd;
+	// Number of interactors above the cutoff
+	private int interactorNumber;
+	private List<Pathway> pathways;
+	
+	public PrdEnrichment() {
+	}
+	
+	public PrdEnrichment(Double prd, int interactorNumber, List<Pathway> pathways) {
+		this.prd = prd;
+		this.interactorNumber = interactorNumber;
+		this.pathways = pathways;
+	}
+
+	public Double getPrd() {
+		return prd;
+	}
+
+	public void setPrd(Double prd) {
+		this.prd = prd;
+	}
+
+	public int getInteractorNumber() {
+		return interactorNumber;
+	}
+
+	public void setInteractorNumber(int interactorNumber) {
+		this.interactorNumber = interactorNumber;
+	}
+
+	public List<Pathway> getPathways() {
+		return pathways;
+	}
+
+	public void setPathways(List<Pathway> pathways) {
+		this.pathways = pathways;
+	}
+}
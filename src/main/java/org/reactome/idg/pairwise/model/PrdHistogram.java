@@ -0,0 +1,44 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Numbers of combined score interactors of a gene above fixed PRD cutoffs. counts.get(i) is the
+ * number of interactors having scores greater than cutoffs.get(i).
+ */
+public class PrdHistogram {
+
+	private String gene;
+	private List<Double> cutoffs;
+	private List<Integer> counts;
+	
+	public PrdHistogram() {
+		cutoffs = new ArrayList<>();
+		counts = new ArrayList<>();
+	}
+
+	public String getGene() {
+		return gene;
+	}
+
+	public void setGene(String gene) {
+		this.gene = gene;
+	}
+
+	public List<Double> getCutoffs() {
+		return cutoffs;
+	}
+
+	public void setCutoffs(List<Double> cutoffs) {
+		this.cutoffs = cutoffs;
+	}
+
+	public List<Integer> getCounts() {
+		return counts;
+	}
+
+	public void setCounts(List<Integer> counts) {
+		this.counts = counts;
+	}
+}
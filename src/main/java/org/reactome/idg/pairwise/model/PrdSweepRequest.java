@@ -0,0 +1,36 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.List;
+
+/**
+ * Request for enriched combined score pathways of a term at multiple PRD cutoffs.
+ */
+public class PrdSweepRequest {
+	
+	private String term;
+	private List<Double> prds;
+	
+	public PrdSweepRequest() {
+	}
+	
+	public PrdSweepRequest(String term, List<Double> prds) {
+		this.term = term;
+		this.prds = prds;
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public void setTerm(String term) {
+		this.term = term;
+	}
+
+	public List<Double> getPrds() {
+		return prds;
+	}
+
+	public void setPrds(List<Double> prds) {
+		this.prds = prds;
+	}
+}
@@ -0,0 +1,33 @@
+package org.reactome.idg.pairwise.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Whether all warmed-up components have been loaded, with the status of each component.
+ */
+public class ReadinessStatus {
+	
+	private boolean ready;
+	private List<ComponentStatus> components;
+	
+	public ReadinessStatus() {
+		components = new ArrayList<>();
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public void setReady(boolean ready) {
+		this.ready = ready;
+	}
+
+	public List<ComponentStatus> getComponents() {
+		return components;
+	}
+
+	public void setComponents(List<ComponentStatus> components) {
+		this.components = components;
+	}
+}
@@ -16,6 +16,9 @@ public class NodeData extends Data {
 	private Double pVal;
 	private String weightedTDLColorHex;
 	private Integer geneNumber;
+	// Layout coordinates computed by the service when requested
+	private Double x;
+	private Double y;
 	
 	public NodeData() {/*Nothing Here*/}
 	
@@ -37,6 +40,22 @@ public class NodeData extends Data {
 		this.geneNumber = geneNumber;
 	}
 
+	public Double getX() {
+		return x;
+	}
+
+	public void setX(Double x) {
+		this.x = x;
+	}
+
+	public Double getY() {
+		return y;
+	}
+
+	public void setY(Double y) {
+		this.y = y;
+	}
+
 	public Double getWeightedTDL() {
 		return weightedTDL;
 	}
@@ -0,0 +1,61 @@
+package org.reactome.idg.pairwise.model.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pathway network after pruning together with the numbers of nodes and edges before pruning.
+ */
+public class PathwayNetwork {
+
+	private int totalNodes;
+	private int totalEdges;
+	private int nodeNumber;
+	private int edgeNumber;
+	// Nodes first and then edges as in the unpruned network
+	private List<Element> elements;
+	
+	public PathwayNetwork() {
+		elements = new ArrayList<>();
+	}
+
+	public int getTotalNodes() {
+		return totalNodes;
+	}
+
+	public void setTotalNodes(int totalNodes) {
+		this.totalNodes = totalNodes;
+	}
+
+	public int getTotalEdges() {
+		return totalEdges;
+	}
+
+	public void setTotalEdges(int totalEdges) {
+		this.totalEdges = totalEdges;
+	}
+
+	public int getNodeNumber() {
+		return nodeNumber;
+	}
+
+	public void setNodeNumber(int nodeNumber) {
+		this.nodeNumber = nodeNumber;
+	}
+
+	public int getEdgeNumber() {
+		return edgeNumber;
+	}
+
+	public void setEdgeNumber(int edgeNumber) {
+		this.edgeNumber = edgeNumber;
+	}
+
+	public List<Element> getElements() {
+		return elements;
+	}
+
+	public void setElements(List<Element> elements) {
+		this.elements = elements;
+	}
+}
@@ -0,0 +1,264 @@
+package org.reactome.idg.pairwise.service;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.reactome.idg.pairwise.util.CombinedScores;
+import org.reactome.idg.pairwise.util.Float16;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCursor;
+
+/**
+ * All combined scores as a sparse gene x gene matrix. Each row keeps the interactors of a gene as int
+ * gene indices and half precision (see Float16) scores sorted by descending score, so that scores above
+ * a cutoff are a prefix of the row. Neighbors and scores are kept off the heap, either in direct buffers
+ * when loaded from MongoDB or in memory-mapped buffers when opened from a file written by write().
+ * Scores are approximate: cutoffs are rounded to half precision before comparison so that a score equal
+ * to the cutoff is excluded as it is in the stored scores.
+ */
+public class CombinedScoreMatrix {
+    private static final Logger logger = LoggerFactory.getLogger(CombinedScoreMatrix.class);
+    static final int MAGIC = 0x43534D58; // "CSMX"
+    static final int VERSION = 1;
+    // magic, version, rowCount, entry count, data offset
+    private static final int HEADER_LENGTH = 4 * 4 + 8;
+
+    private final GeneSymbolTable geneSymbolTable;
+    // Rows are indexed by gene indices. Rows are not necessarily stored in order.
+    private final IntBuffer rowStarts;
+    private final IntBuffer rowLengths;
+    private final IntBuffer neighbors;
+    private final ShortBuffer scores;
+
+    private CombinedScoreMatrix(GeneSymbolTable geneSymbolTable,
+                                IntBuffer rowStarts,
+                                IntBuffer rowLengths,
+                                IntBuffer neighbors,
+                                ShortBuffer scores) {
+        this.geneSymbolTable = geneSymbolTable;
+        this.rowStarts = rowStarts;
+        this.rowLengths = rowLengths;
+        this.neighbors = neighbors;
+        this.scores = scores;
+    }
+
+    /**
+     * Load combined_score of all documents in the relationships collection.
+     * @param repository
+     * @param geneSymbolTable
+     * @return
+     */
+    public static CombinedScoreMatrix load(RelationshipRepository repository, GeneSymbolTable geneSymbolTable) {
+        long time1 = System.currentTimeMillis();
+        int rowCount = geneSymbolTable.length();
+        IntBuffer rowStarts = ByteBuffer.allocateDirect(rowCount * 4).asIntBuffer();
+        IntBuffer rowLengths = ByteBuffer.allocateDirect(rowCount * 4).asIntBuffer();
+        // Grown while loading
+        IntBuffer neighbors = ByteBuffer.allocateDirect(1024 * 1024 * 4).asIntBuffer();
+        ShortBuffer scores = ByteBuffer.allocateDirect(1024 * 1024 * 2).asShortBuffer();
+        int total = 0;
+        MongoCursor<Document> cursor = repository.iterateAll(Collections.singletonList(RelationshipRepository.COMBINED_SCORE));
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                int row = geneSymbolTable.getIndex(geneDoc.getString("_id"));
+                CombinedScores rowScores = CombinedScores.decode(geneDoc.get(RelationshipRepository.COMBINED_SCORE));
+                if (row < 0 || rowScores == null || rowScores.size() == 0)
+                    continue;
+                if ((long) total + rowScores.size() > Integer.MAX_VALUE / 4)
+                    throw new IllegalStateException("Too many combined scores to be held in one buffer.");
+                if (neighbors.capacity() < total + rowScores.size()) {
+                    int capacity = (int) Math.min(Integer.MAX_VALUE / 4,
+                                                  Math.max(2L * neighbors.capacity(), total + rowScores.size()));
+                    neighbors = grow(neighbors, capacity);
+                    scores = grow(scores, capacity);
+                }
+                rowStarts.put(row, total);
+                rowLengths.put(row, rowScores.size());
+                for (int i = 0; i < rowScores.size(); i++) {
+                    neighbors.put(total + i, rowScores.getIndex(i));
+                    scores.put(total + i, Float16.fromFloat(rowScores.getScore(i)));
+                }
+                total += rowScores.size();
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        neighbors.limit(total);
+        scores.limit(total);
+        long time2 = System.currentTimeMillis();
+        logger.info("Loaded " + total + " combined scores in " + (time2 - time1) + " ms.");
+        return new CombinedScoreMatrix(geneSymbolTable, rowStarts, rowLengths, neighbors, scores);
+    }
+
+    private static IntBuffer grow(IntBuffer buffer, int capacity) {
+        IntBuffer rtn = ByteBuffer.allocateDirect(capacity * 4).asIntBuffer();
+        IntBuffer source = buffer.duplicate();
+        source.clear();
+        rtn.put(source);
+        rtn.clear();
+        return rtn;
+    }
+
+    private static ShortBuffer grow(ShortBuffer buffer, int capacity) {
+        ShortBuffer rtn = ByteBuffer.allocateDirect(capacity * 2).asShortBuffer();
+        ShortBuffer source = buffer.duplicate();
+        source.clear();
+        rtn.put(source);
+        rtn.clear();
+        return rtn;
+    }
+
+    /**
+     * Write this matrix into a file that can be opened by open(). The layout is a header, the gene
+     * symbols, and then the row starts, row lengths, neighbors and scores in big-endian.
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        ByteArrayOutputStream symbolBytes = new ByteArrayOutputStream();
+        DataOutputStream symbolOut = new DataOutputStream(symbolBytes);
+        for (int i = 0; i < getRowCount(); i++) {
+            String symbol = geneSymbolTable.getSymbol(i);
+            symbolOut.writeUTF(symbol == null ? "" : symbol);
+        }
+        symbolOut.close();
+        int total = neighbors.limit();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(getRowCount());
+            out.writeInt(total);
+            out.writeLong(HEADER_LENGTH + symbolBytes.size());
+            symbolBytes.writeTo(out);
+            for (int i = 0; i < getRowCount(); i++)
+                out.writeInt(rowStarts.get(i));
+            for (int i = 0; i < getRowCount(); i++)
+                out.writeInt(rowLengths.get(i));
+            for (int i = 0; i < total; i++)
+                out.writeInt(neighbors.get(i));
+            for (int i = 0; i < total; i++)
+                out.writeShort(scores.get(i));
+        }
+    }
+
+    /**
+     * Open a file written by write(). The data sections are memory-mapped.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static CombinedScoreMatrix open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_LENGTH);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file.getAbsolutePath() + " is not a combined score matrix.");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported combined score matrix version: " + version);
+            int rowCount = header.getInt();
+            int total = header.getInt();
+            long dataOffset = header.getLong();
+
+            ByteBuffer symbolBuffer = channel.map(MapMode.READ_ONLY, HEADER_LENGTH, dataOffset - HEADER_LENGTH);
+            byte[] bytes = new byte[symbolBuffer.remaining()];
+            symbolBuffer.get(bytes);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            String[] symbols = new String[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                String symbol = in.readUTF();
+                symbols[i] = symbol.length() == 0 ? null : symbol;
+            }
+            long position = dataOffset;
+            IntBuffer rowStarts = channel.map(MapMode.READ_ONLY, position, 4L * rowCount).asIntBuffer();
+            position += 4L * rowCount;
+            IntBuffer rowLengths = channel.map(MapMode.READ_ONLY, position, 4L * rowCount).asIntBuffer();
+            position += 4L * rowCount;
+            IntBuffer neighbors = channel.map(MapMode.READ_ONLY, position, 4L * total).asIntBuffer();
+            position += 4L * total;
+            ShortBuffer scores = channel.map(MapMode.READ_ONLY, position, 2L * total).asShortBuffer();
+            logger.info("Mapped " + total + " combined scores from " + file.getAbsolutePath() + ".");
+            return new CombinedScoreMatrix(new GeneSymbolTable(symbols), rowStarts, rowLengths, neighbors, scores);
+        }
+    }
+
+    public GeneSymbolTable getGeneSymbolTable() {
+        return geneSymbolTable;
+    }
+
+    public int getRowCount() {
+        return rowStarts.limit();
+    }
+
+    /**
+     * @return the number of stored scores.
+     */
+    public int getEntryCount() {
+        return neighbors.limit();
+    }
+
+    /**
+     * @param geneIndex
+     * @return the number of interactors of the gene.
+     */
+    public int getRowLength(int geneIndex) {
+        if (geneIndex < 0 || geneIndex >= getRowCount())
+            return 0;
+        return rowLengths.get(geneIndex);
+    }
+
+    /**
+     * @param cutoff
+     * @return the cutoff rounded as stored scores are.
+     */
+    static float roundCutoff(double cutoff) {
+        return Float16.round((float) cutoff);
+    }
+
+    /**
+     * Find genes having a score greater than cutoff with any of the passed genes. This is a scan of
+     * the prefix of each passed row.
+     * @param geneIndices rows to be scanned
+     * @param cutoff
+     * @return gene indices to their highest scores with the passed genes.
+     */
+    public Map<Integer, Float> findAbove(int[] geneIndices, double cutoff) {
+        float rounded = roundCutoff(cutoff);
+        Map<Integer, Float> rtn = new HashMap<>();
+        for (int geneIndex : geneIndices) {
+            int length = getRowLength(geneIndex);
+            if (length == 0)
+                continue;
+            int start = rowStarts.get(geneIndex);
+            for (int i = start; i < start + length; i++) {
+                float score = Float16.toFloat(scores.get(i));
+                if (score <= rounded)
+                    break; // Sorted by descending score
+                rtn.merge(neighbors.get(i), score, Math::max);
+            }
+        }
+        return rtn;
+    }
+
+}
@@ -0,0 +1,238 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.reactome.idg.pairwise.util.RelationshipCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * A heap based RelationshipIndex. Each DataDesc is kept as two compressed-sparse-row (CSR) blocks,
+ * one for positive and one for negative relationships. Row i of a block lists the gene indices
+ * related to the gene having index i: neighbors[offsets[i]] to neighbors[offsets[i + 1] - 1].
+ */
+public class CsrRelationshipIndex implements RelationshipIndex {
+    private static final Logger logger = LoggerFactory.getLogger(CsrRelationshipIndex.class);
+    private static final int[] EMPTY = new int[0];
+
+    private final GeneSymbolTable geneSymbolTable;
+    // Genes having a document in the relationships collection
+    private final BitSet genesWithDoc;
+    private final Map<String, CsrBlock> descIdToPos;
+    private final Map<String, CsrBlock> descIdToNeg;
+
+    private CsrRelationshipIndex(GeneSymbolTable geneSymbolTable,
+                                 BitSet genesWithDoc,
+                                 Map<String, CsrBlock> descIdToPos,
+                                 Map<String, CsrBlock> descIdToNeg) {
+        this.geneSymbolTable = geneSymbolTable;
+        this.genesWithDoc = genesWithDoc;
+        this.descIdToPos = descIdToPos;
+        this.descIdToNeg = descIdToNeg;
+    }
+
+    /**
+     * Load the whole relationships collection into memory. The combined_score sub-documents
+     * are not loaded.
+     * @param collection the relationships collection
+     * @param geneSymbolTable the content of the GENE_INDEX collection
+     * @return
+     */
+    public static CsrRelationshipIndex load(MongoCollection<Document> collection,
+                                            GeneSymbolTable geneSymbolTable) {
+        long time1 = System.currentTimeMillis();
+        int rows = geneSymbolTable.length();
+        BitSet genesWithDoc = new BitSet(rows);
+        Map<String, CsrBuilder> posBuilders = new HashMap<>();
+        Map<String, CsrBuilder> negBuilders = new HashMap<>();
+        int skipped = 0;
+        MongoCursor<Document> cursor = collection.find().iterator();
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                int geneIndex = geneSymbolTable.getIndex(geneDoc.getString("_id"));
+                if (geneIndex < 0) {
+                    skipped ++;
+                    continue;
+                }
+                genesWithDoc.set(geneIndex);
+                for (String key : geneDoc.keySet()) {
+                    // Only DataDesc ids have "|"
+                    if (!key.contains("|"))
+                        continue;
+                    Document relDoc = (Document) geneDoc.get(key);
+                    int[] indices = RelationshipCodec.decode(relDoc.get("pos"));
+                    if (indices != null && indices.length > 0)
+                        posBuilders.computeIfAbsent(key, k -> new CsrBuilder(rows)).addRow(geneIndex, indices);
+                    indices = RelationshipCodec.decode(relDoc.get("neg"));
+                    if (indices != null && indices.length > 0)
+                        negBuilders.computeIfAbsent(key, k -> new CsrBuilder(rows)).addRow(geneIndex, indices);
+                }
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        if (skipped > 0)
+            logger.warn(skipped + " relationship documents are not in the gene index and not loaded.");
+        Map<String, CsrBlock> descIdToPos = new HashMap<>();
+        posBuilders.forEach((descId, builder) -> descIdToPos.put(descId, builder.build()));
+        Map<String, CsrBlock> descIdToNeg = new HashMap<>();
+        negBuilders.forEach((descId, builder) -> descIdToNeg.put(descId, builder.build()));
+        CsrRelationshipIndex index = new CsrRelationshipIndex(geneSymbolTable,
+                                                              genesWithDoc,
+                                                              descIdToPos,
+                                                              descIdToNeg);
+        long time2 = System.currentTimeMillis();
+        logger.info("Loaded relationship index for " + genesWithDoc.cardinality() + " genes and " +
+                    index.getDataDescIds().size() + " data descriptions (" +
+                    index.getSizeInBytes() / (1024 * 1024) + " MB) in " + (time2 - time1) + " ms.");
+        return index;
+    }
+
+    @Override
+    public int getGeneIndex(String gene) {
+        int index = geneSymbolTable.getIndex(gene);
+        if (index < 0 || !genesWithDoc.get(index))
+            return -1;
+        return index;
+    }
+
+    @Override
+    public Set<String> getDataDescIds() {
+        Set<String> rtn = new HashSet<>(descIdToPos.keySet());
+        rtn.addAll(descIdToNeg.keySet());
+        return Collections.unmodifiableSet(rtn);
+    }
+
+    @Override
+    public int getPosCount(String descId, int geneIndex) {
+        return count(descIdToPos.get(descId), geneIndex);
+    }
+
+    @Override
+    public int getNegCount(String descId, int geneIndex) {
+        return count(descIdToNeg.get(descId), geneIndex);
+    }
+
+    @Override
+    public int[] getPos(String descId, int geneIndex) {
+        return row(descIdToPos.get(descId), geneIndex);
+    }
+
+    @Override
+    public int[] getNeg(String descId, int geneIndex) {
+        return row(descIdToNeg.get(descId), geneIndex);
+    }
+
+    /**
+     * @return the approximate heap size of the CSR blocks.
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (CsrBlock block : descIdToPos.values())
+            size += 4L * (block.offsets.length + block.neighbors.length);
+        for (CsrBlock block : descIdToNeg.values())
+            size += 4L * (block.offsets.length + block.neighbors.length);
+        return size;
+    }
+
+    /**
+     * @return the number of rows in each CSR block, which is the largest gene index plus one.
+     */
+    int getRowCount() {
+        return geneSymbolTable.length();
+    }
+
+    @Override
+    public GeneSymbolTable getGeneSymbolTable() {
+        return geneSymbolTable;
+    }
+
+    BitSet getGenesWithDoc() {
+        return genesWithDoc;
+    }
+
+    /**
+     * Get the raw CSR arrays for a DataDesc. The returned arrays should not be modified.
+     * @param descId
+     * @param isPos
+     * @return an array of two elements: offsets and neighbors, or null if there is no block.
+     */
+    int[][] getBlock(String descId, boolean isPos) {
+        CsrBlock block = isPos ? descIdToPos.get(descId) : descIdToNeg.get(descId);
+        if (block == null)
+            return null;
+        return new int[][] {block.offsets, block.neighbors};
+    }
+
+    private int count(CsrBlock block, int geneIndex) {
+        if (block == null || geneIndex < 0 || geneIndex >= block.offsets.length - 1)
+            return 0;
+        return block.offsets[geneIndex + 1] - block.offsets[geneIndex];
+    }
+
+    private int[] row(CsrBlock block, int geneIndex) {
+        if (count(block, geneIndex) == 0)
+            return EMPTY;
+        return Arrays.copyOfRange(block.neighbors, block.offsets[geneIndex], block.offsets[geneIndex + 1]);
+    }
+
+    private static class CsrBlock {
+        private final int[] offsets;
+        private final int[] neighbors;
+
+        CsrBlock(int[] offsets, int[] neighbors) {
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+        }
+    }
+
+    /**
+     * Rows are appended in the order of the relationship documents and re-ordered by the
+     * gene index in build().
+     */
+    private static class CsrBuilder {
+        private final int[] rowStart;
+        private final int[] rowLength;
+        private int[] data;
+        private int size;
+
+        CsrBuilder(int rows) {
+            rowStart = new int[rows];
+            rowLength = new int[rows];
+            data = new int[1024];
+        }
+
+        void addRow(int row, int[] values) {
+            if (size + values.length > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + values.length));
+            System.arraycopy(values, 0, data, size, values.length);
+            rowStart[row] = size;
+            rowLength[row] = values.length;
+            size += values.length;
+        }
+
+        CsrBlock build() {
+            int[] offsets = new int[rowStart.length + 1];
+            int[] neighbors = new int[size];
+            for (int i = 0; i < rowStart.length; i++) {
+                System.arraycopy(data, rowStart[i], neighbors, offsets[i], rowLength[i]);
+                offsets[i + 1] = offsets[i] + rowLength[i];
+            }
+            return new CsrBlock(offsets, neighbors);
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.reactome.annotate.GeneSetAnnotation;
+
+/**
+ * Pathway enrichment over gene indices, producing the same annotations as PathwayBasedAnnotator with
+ * Benjamini-Hochberg FDRs. Each pathway is kept as a bitset of its genes so that the hits of a query
+ * are counted by popcount instead of walking the gene to pathway map for each query.
+ * The test is the same as in the annotator: the p-value of a pathway having k hits is the binomial
+ * upper tail P(X >= k) with X ~ Binomial(n, size / universe), where n is the number of query genes
+ * annotated in any pathway and universe is the number of annotated genes. Binomial terms are computed
+ * from a precomputed log-factorial table. Hit ids are not collected.
+ */
+public class EnrichmentEngine {
+
+    // Gene to its index in the bitsets
+    private final Map<String, Integer> geneToIndex;
+    private final int universe;
+    private final String[] pathways;
+    // Number of genes in each pathway
+    private final int[] pathwaySizes;
+    // One bitset per pathway, trimmed after the last set word
+    private final long[][] pathwayBits;
+    // Pathways of each gene as positions in pathways for incremental counting
+    private final int[][] genePathways;
+    // logFactorials[i] = log(i!)
+    private final double[] logFactorials;
+
+    /**
+     * @param geneToPathways annotated genes to the stable ids of their pathways, as passed to
+     * PathwayBasedAnnotator.annotateGeneSet().
+     */
+    public EnrichmentEngine(Map<String, Set<String>> geneToPathways) {
+        universe = geneToPathways.size();
+        geneToIndex = new HashMap<>();
+        Map<String, List<Integer>> pathwayToIndices = new HashMap<>();
+        for (Map.Entry<String, Set<String>> entry : geneToPathways.entrySet()) {
+            // Genes without pathways are in the universe but are not counted in queries
+            if (entry.getValue() == null || entry.getValue().isEmpty())
+                continue;
+            int index = geneToIndex.size();
+            geneToIndex.put(entry.getKey(), index);
+            for (String pathway : entry.getValue())
+                pathwayToIndices.computeIfAbsent(pathway, key -> new ArrayList<>()).add(index);
+        }
+        pathways = pathwayToIndices.keySet().toArray(new String[0]);
+        Arrays.sort(pathways);
+        pathwaySizes = new int[pathways.length];
+        pathwayBits = new long[pathways.length][];
+        for (int i = 0; i < pathways.length; i++) {
+            List<Integer> indices = pathwayToIndices.get(pathways[i]);
+            pathwaySizes[i] = indices.size();
+            long[] bits = new long[(Collections.max(indices) >> 6) + 1];
+            for (int index : indices)
+                bits[index >> 6] |= 1L << index;
+            pathwayBits[i] = bits;
+        }
+        int[] pathwayCounts = new int[geneToIndex.size()];
+        for (int i = 0; i < pathways.length; i++) {
+            for (int index : pathwayToIndices.get(pathways[i]))
+                pathwayCounts[index] ++;
+        }
+        genePathways = new int[geneToIndex.size()][];
+        for (int i = 0; i < genePathways.length; i++)
+            genePathways[i] = new int[pathwayCounts[i]];
+        Arrays.fill(pathwayCounts, 0);
+        for (int i = 0; i < pathways.length; i++) {
+            for (int index : pathwayToIndices.get(pathways[i]))
+                genePathways[index][pathwayCounts[index]++] = i;
+        }
+        logFactorials = createLogFactorials(universe);
+    }
+
+    private static double[] createLogFactorials(int max) {
+        double[] rtn = new double[max + 1];
+        for (int i = 2; i <= max; i++)
+            rtn[i] = rtn[i - 1] + Math.log(i);
+        return rtn;
+    }
+
+    public int getPathwayCount() {
+        return pathways.length;
+    }
+
+    public int getUniverseSize() {
+        return universe;
+    }
+
+    /**
+     * Annotate a gene set. Genes not annotated in any pathway are ignored. Like the annotator, a gene
+     * listed more than once is counted more than once.
+     * @param genes
+     * @return annotations of pathways having at least one hit sorted by p-values.
+     */
+    public List<GeneSetAnnotation> annotate(Collection<String> genes) {
+        long[] queryBits = new long[(geneToIndex.size() >> 6) + 1];
+        // Genes listed again after their first occurrence
+        List<Integer> repeats = new ArrayList<>();
+        int n = 0;
+        for (String gene : genes) {
+            Integer index = geneToIndex.get(gene);
+            if (index == null)
+                continue;
+            long mask = 1L << index;
+            if ((queryBits[index >> 6] & mask) != 0)
+                repeats.add(index);
+            else
+                queryBits[index >> 6] |= mask;
+            n ++;
+        }
+        if (n == 0)
+            return new ArrayList<>();
+        int[] hits = new int[pathways.length];
+        for (int i = 0; i < pathways.length; i++) {
+            long[] bits = pathwayBits[i];
+            for (int j = 0; j < bits.length; j++)
+                hits[i] += Long.bitCount(bits[j] & queryBits[j]);
+            for (int index : repeats) {
+                if (index >> 6 < bits.length && (bits[index >> 6] & (1L << index)) != 0)
+                    hits[i] ++;
+            }
+        }
+        return createAnnotations(hits, n);
+    }
+
+    /**
+     * Annotate the prefixes of a list of genes, e.g. interactors sorted by descending scores so that
+     * each prefix is the interactors above a cutoff. Hits are counted incrementally in one pass over the
+     * list. Results are the same as calling annotate() for each prefix.
+     * @param genes
+     * @param prefixLengths lengths of the prefixes in ascending order
+     * @return annotations of each prefix in the order of prefixLengths.
+     */
+    public List<List<GeneSetAnnotation>> annotatePrefixes(List<String> genes, int[] prefixLengths) {
+        List<List<GeneSetAnnotation>> rtn = new ArrayList<>(prefixLengths.length);
+        int[] hits = new int[pathways.length];
+        int n = 0;
+        int position = 0;
+        for (int prefixLength : prefixLengths) {
+            if (prefixLength < position)
+                throw new IllegalArgumentException("Prefix lengths must be in ascending order.");
+            for (; position < prefixLength && position < genes.size(); position++) {
+                Integer index = geneToIndex.get(genes.get(position));
+                if (index == null)
+                    continue;
+                for (int pathway : genePathways[index])
+                    hits[pathway] ++;
+                n ++;
+            }
+            rtn.add(n == 0 ? new ArrayList<>() : createAnnotations(hits, n));
+        }
+        return rtn;
+    }
+
+    private List<GeneSetAnnotation> createAnnotations(int[] hits, int n) {
+        double[] table = n < logFactorials.length ? logFactorials : createLogFactorials(n);
+        // Collect pathways having hits in the order of a HashMap keyed by their ids, which is the
+        // order the annotator sorts from, so that pathways having equal p-values are listed as they are there
+        Map<String, GeneSetAnnotation> idToAnnotation = new HashMap<>();
+        for (int i = 0; i < pathways.length; i++) {
+            if (hits[i] == 0)
+                continue;
+            double ratio = (double) pathwaySizes[i] / universe;
+            GeneSetAnnotation annotation = new GeneSetAnnotation();
+            annotation.setTopic(pathways[i]);
+            annotation.setHitNumber(hits[i]);
+            annotation.setPValue(calculateBinomialPValue(ratio, n, hits[i], table));
+            annotation.setRatioOfTopic(ratio);
+            annotation.setNumberInTopic(pathwaySizes[i]);
+            idToAnnotation.put(pathways[i], annotation);
+        }
+        List<GeneSetAnnotation> rtn = new ArrayList<>(idToAnnotation.values());
+        rtn.sort(Comparator.comparingDouble(GeneSetAnnotation::getPValue)); // Stable
+        double[] pValues = new double[rtn.size()];
+        for (int i = 0; i < pValues.length; i++)
+            pValues[i] = rtn.get(i).getPValue();
+        double[] fdrs = calculateBHFDRs(pValues);
+        for (int i = 0; i < fdrs.length; i++)
+            rtn.get(i).setFdr(fdrs[i] + "");
+        return rtn;
+    }
+
+    /**
+     * P(X >= k) for X ~ Binomial(n, p). k = 0 is handled as 1 as in the annotator. The upper tail is summed
+     * directly in log space, scaled by its largest term, instead of 1 - P(X <= k - 1), which cancels to
+     * zero or a negative value for p-values below about 1.0e-12.
+     */
+    static double calculateBinomialPValue(double p, int n, int k, double[] logFactorials) {
+        if (k == 0)
+            k = 1;
+        if (p >= 1.0d)
+            return 1.0d;
+        if (k > n)
+            return 0.0d;
+        double logP = Math.log(p);
+        double logQ = Math.log1p(-p);
+        // Terms increase up to the mode and decrease after it
+        int mode = (int) Math.min(n, Math.floor((n + 1) * p));
+        int maxAt = Math.max(k, mode);
+        double maxLogTerm = logBinomialTerm(n, maxAt, logP, logQ, logFactorials);
+        double sum = 0.0d;
+        for (int i = k; i <= n; i++) {
+            double term = Math.exp(logBinomialTerm(n, i, logP, logQ, logFactorials) - maxLogTerm);
+            sum += term;
+            if (i > maxAt && term < sum * 1.0e-17d)
+                break; // The rest cannot change the sum
+        }
+        return Math.min(1.0d, Math.exp(maxLogTerm + Math.log(sum)));
+    }
+
+    private static double logBinomialTerm(int n, int i, double logP, double logQ, double[] logFactorials) {
+        return logFactorials[n] - logFactorials[i] - logFactorials[n - i] + i * logP + (n - i) * logQ;
+    }
+
+    /**
+     * Benjamini-Hochberg FDRs for sorted p-values. The scale n / rank uses integer division as
+     * MathUtilities.calculateFDRWithBenjaminiHochberg() does so that FDRs are the same as before.
+     * @param pValues in ascending order
+     * @return
+     */
+    static double[] calculateBHFDRs(double[] pValues) {
+        int size = pValues.length;
+        double[] rtn = Arrays.copyOf(pValues, size);
+        for (int i = size - 2; i >= 0; i--)
+            rtn[i] = Math.min(pValues[i] * (size / (i + 1)), rtn[i + 1]);
+        return rtn;
+    }
+
+}
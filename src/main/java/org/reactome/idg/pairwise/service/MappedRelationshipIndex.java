@@ -0,0 +1,226 @@
+package org.reactome.idg.pairwise.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.reactome.idg.model.FeatureType;
+import org.reactome.idg.pairwise.model.DataDesc;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A RelationshipIndex backed by a snapshot file generated by RelationshipSnapshotWriter. The CSR blocks
+ * are memory-mapped and stay off the heap: only the gene symbol table and the DataDesc table are read
+ * into memory when the file is opened. Since the mapped pages are managed by the OS, they are shared
+ * by all JVMs on the same host opening the same file.
+ */
+public class MappedRelationshipIndex implements RelationshipIndex {
+    private static final Logger logger = LoggerFactory.getLogger(MappedRelationshipIndex.class);
+    static final int MAGIC = 0x52454C53; // "RELS"
+    static final int VERSION = 1;
+    private static final int[] EMPTY = new int[0];
+
+    private final GeneSymbolTable geneSymbolTable;
+    private final BitSet genesWithDoc;
+    private final List<DataDesc> dataDescs;
+    private final Map<String, MappedBlock> descIdToPos;
+    private final Map<String, MappedBlock> descIdToNeg;
+
+    private MappedRelationshipIndex(GeneSymbolTable geneSymbolTable,
+                                    BitSet genesWithDoc,
+                                    List<DataDesc> dataDescs,
+                                    Map<String, MappedBlock> descIdToPos,
+                                    Map<String, MappedBlock> descIdToNeg) {
+        this.geneSymbolTable = geneSymbolTable;
+        this.genesWithDoc = genesWithDoc;
+        this.dataDescs = dataDescs;
+        this.descIdToPos = descIdToPos;
+        this.descIdToNeg = descIdToNeg;
+    }
+
+    /**
+     * Open a snapshot file. The file channel is closed after mapping, which doesn't affect
+     * the mapped buffers.
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static MappedRelationshipIndex open(File file) throws IOException {
+        long time1 = System.currentTimeMillis();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0, RelationshipSnapshotWriter.HEADER_LENGTH);
+            if (header.getInt() != MAGIC)
+                throw new IOException(file.getAbsolutePath() + " is not a relationship snapshot.");
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported relationship snapshot version: " + version);
+            int rowCount = header.getInt();
+            int descCount = header.getInt();
+            long geneTableOffset = header.getLong();
+            long descTableOffset = header.getLong();
+            long dataOffset = header.getLong();
+
+            DataInputStream in = readSection(channel, geneTableOffset, descTableOffset);
+            String[] symbols = new String[rowCount];
+            for (int i = 0; i < rowCount; i++)
+                symbols[i] = emptyToNull(in.readUTF());
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++)
+                words[i] = in.readLong();
+            BitSet genesWithDoc = BitSet.valueOf(words);
+
+            in = readSection(channel, descTableOffset, dataOffset);
+            List<DataDesc> dataDescs = new ArrayList<>(descCount);
+            Map<String, MappedBlock> descIdToPos = new HashMap<>();
+            Map<String, MappedBlock> descIdToNeg = new HashMap<>();
+            for (int i = 0; i < descCount; i++) {
+                DataDesc desc = new DataDesc();
+                desc.setId(in.readUTF());
+                desc.setDigitalKey(in.readInt());
+                desc.setProvenance(emptyToNull(in.readUTF()));
+                desc.setBioSource(emptyToNull(in.readUTF()));
+                String dataType = in.readUTF();
+                if (dataType.length() > 0)
+                    desc.setDataType(FeatureType.valueOf(dataType));
+                desc.setOrigin(emptyToNull(in.readUTF()));
+                dataDescs.add(desc);
+                MappedBlock block = mapBlock(channel, dataOffset, in.readLong(), rowCount, in.readInt());
+                if (block != null)
+                    descIdToPos.put(desc.getId(), block);
+                block = mapBlock(channel, dataOffset, in.readLong(), rowCount, in.readInt());
+                if (block != null)
+                    descIdToNeg.put(desc.getId(), block);
+            }
+            long time2 = System.currentTimeMillis();
+            logger.info("Mapped relationship snapshot " + file.getAbsolutePath() + " for " +
+                        genesWithDoc.cardinality() + " genes and " + descCount + " data descriptions in " +
+                        (time2 - time1) + " ms.");
+            return new MappedRelationshipIndex(new GeneSymbolTable(symbols),
+                                               genesWithDoc,
+                                               Collections.unmodifiableList(dataDescs),
+                                               descIdToPos,
+                                               descIdToNeg);
+        }
+    }
+
+    private static DataInputStream readSection(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = channel.map(MapMode.READ_ONLY, start, end - start);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new DataInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    private static MappedBlock mapBlock(FileChannel channel,
+                                        long dataOffset,
+                                        long position,
+                                        int rowCount,
+                                        int neighborCount) throws IOException {
+        if (position < 0)
+            return null;
+        long start = dataOffset + position;
+        // A single mapping cannot be larger than Integer.MAX_VALUE bytes
+        if (4L * neighborCount > Integer.MAX_VALUE)
+            throw new IOException("Relationship block is too large to be mapped: " + neighborCount + " neighbors.");
+        MappedByteBuffer offsets = channel.map(MapMode.READ_ONLY, start, 4L * (rowCount + 1));
+        MappedByteBuffer neighbors = channel.map(MapMode.READ_ONLY, start + 4L * (rowCount + 1), 4L * neighborCount);
+        return new MappedBlock(offsets.asIntBuffer(), neighbors.asIntBuffer());
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+
+    /**
+     * @return the DataDescs stored in the snapshot.
+     */
+    public List<DataDesc> getDataDescs() {
+        return dataDescs;
+    }
+
+    @Override
+    public int getGeneIndex(String gene) {
+        int index = geneSymbolTable.getIndex(gene);
+        if (index < 0 || !genesWithDoc.get(index))
+            return -1;
+        return index;
+    }
+
+    @Override
+    public GeneSymbolTable getGeneSymbolTable() {
+        return geneSymbolTable;
+    }
+
+    @Override
+    public Set<String> getDataDescIds() {
+        Set<String> rtn = new HashSet<>(descIdToPos.keySet());
+        rtn.addAll(descIdToNeg.keySet());
+        return Collections.unmodifiableSet(rtn);
+    }
+
+    @Override
+    public int getPosCount(String descId, int geneIndex) {
+        return count(descIdToPos.get(descId), geneIndex);
+    }
+
+    @Override
+    public int getNegCount(String descId, int geneIndex) {
+        return count(descIdToNeg.get(descId), geneIndex);
+    }
+
+    @Override
+    public int[] getPos(String descId, int geneIndex) {
+        return row(descIdToPos.get(descId), geneIndex);
+    }
+
+    @Override
+    public int[] getNeg(String descId, int geneIndex) {
+        return row(descIdToNeg.get(descId), geneIndex);
+    }
+
+    private int count(MappedBlock block, int geneIndex) {
+        if (block == null || geneIndex < 0 || geneIndex >= block.offsets.limit() - 1)
+            return 0;
+        return block.offsets.get(geneIndex + 1) - block.offsets.get(geneIndex);
+    }
+
+    private int[] row(MappedBlock block, int geneIndex) {
+        int count = count(block, geneIndex);
+        if (count == 0)
+            return EMPTY;
+        int[] rtn = new int[count];
+        // Read from a duplicate so that concurrent queries don't share the buffer position
+        IntBuffer neighbors = block.neighbors.duplicate();
+        neighbors.position(block.offsets.get(geneIndex));
+        neighbors.get(rtn);
+        return rtn;
+    }
+
+    private static class MappedBlock {
+        private final IntBuffer offsets;
+        private final IntBuffer neighbors;
+
+        MappedBlock(IntBuffer offsets, IntBuffer neighbors) {
+            this.offsets = offsets;
+            this.neighbors = neighbors;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.stream.IntStream;
+
+/**
+ * A deterministic force-directed layout (Fruchterman-Reingold) for pathway networks. Nodes start on a
+ * golden-angle spiral in the order they are passed and move for a fixed number of iterations with a
+ * linearly cooling temperature, so that the same network always gets the same coordinates. Repulsion
+ * is O(n^2) per iteration and is computed for nodes in parallel for larger networks. Each node sums its
+ * forces in a fixed order, so threads don't change the results. A weak gravity keeps disconnected
+ * components close to the center.
+ */
+public class NetworkLayout {
+    // Ideal edge length in the coordinates returned
+    private static final double EDGE_LENGTH = 50.0d;
+    private static final int ITERATIONS = 100;
+    private static final double GRAVITY = 0.05d;
+    // Don't bother threads for small networks
+    private static final int PARALLEL_NODE_NUMBER = 200;
+
+    private NetworkLayout() {
+    }
+
+    /**
+     * @param nodeNumber
+     * @param sources indices of the source nodes of edges
+     * @param targets indices of the target nodes of edges
+     * @return x and y of each node as {x0, y0, x1, y1, ...}
+     */
+    public static double[] layout(int nodeNumber, int[] sources, int[] targets) {
+        if (sources.length != targets.length)
+            throw new IllegalArgumentException("Sources and targets have different lengths.");
+        double[] positions = new double[2 * nodeNumber];
+        double goldenAngle = Math.PI * (3.0d - Math.sqrt(5.0d));
+        for (int i = 0; i < nodeNumber; i++) {
+            double radius = EDGE_LENGTH * Math.sqrt(i + 0.5d);
+            positions[2 * i] = radius * Math.cos(i * goldenAngle);
+            positions[2 * i + 1] = radius * Math.sin(i * goldenAngle);
+        }
+        if (nodeNumber < 2)
+            return positions;
+        double k2 = EDGE_LENGTH * EDGE_LENGTH;
+        double startTemperature = EDGE_LENGTH * Math.sqrt(nodeNumber) / 10.0d;
+        double[] displacements = new double[2 * nodeNumber];
+        for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+            IntStream nodes = IntStream.range(0, nodeNumber);
+            if (nodeNumber >= PARALLEL_NODE_NUMBER)
+                nodes = nodes.parallel();
+            // Repulsion between all pairs and gravity to the center
+            nodes.forEach(i -> {
+                double xi = positions[2 * i];
+                double yi = positions[2 * i + 1];
+                double dx = 0.0d;
+                double dy = 0.0d;
+                for (int j = 0; j < nodeNumber; j++) {
+                    if (j == i)
+                        continue;
+                    double diffX = xi - positions[2 * j];
+                    double diffY = yi - positions[2 * j + 1];
+                    double distance2 = diffX * diffX + diffY * diffY;
+                    if (distance2 < 1.0e-6d) {
+                        // Overlapping nodes are pushed apart in a direction fixed by their indices
+                        diffX = i < j ? -1.0e-3d : 1.0e-3d;
+                        diffY = 0.0d;
+                        distance2 = 1.0e-6d;
+                    }
+                    // k^2 / d along the unit vector
+                    double force = k2 / distance2;
+                    dx += diffX * force;
+                    dy += diffY * force;
+                }
+                double distance = Math.sqrt(xi * xi + yi * yi);
+                dx -= GRAVITY * distance * xi / EDGE_LENGTH;
+                dy -= GRAVITY * distance * yi / EDGE_LENGTH;
+                displacements[2 * i] = dx;
+                displacements[2 * i + 1] = dy;
+            });
+            // Attraction along edges: d^2 / k along the unit vector
+            for (int e = 0; e < sources.length; e++) {
+                int source = sources[e];
+                int target = targets[e];
+                if (source == target)
+                    continue;
+                double diffX = positions[2 * source] - positions[2 * target];
+                double diffY = positions[2 * source + 1] - positions[2 * target + 1];
+                double distance = Math.sqrt(diffX * diffX + diffY * diffY);
+                double force = distance / EDGE_LENGTH;
+                displacements[2 * source] -= diffX * force;
+                displacements[2 * source + 1] -= diffY * force;
+                displacements[2 * target] += diffX * force;
+                displacements[2 * target + 1] += diffY * force;
+            }
+            // Move by at most the temperature
+            double temperature = startTemperature * (1.0d - (double) iteration / ITERATIONS);
+            for (int i = 0; i < nodeNumber; i++) {
+                double dx = displacements[2 * i];
+                double dy = displacements[2 * i + 1];
+                double length = Math.sqrt(dx * dx + dy * dy);
+                if (length < 1.0e-9d)
+                    continue;
+                double step = Math.min(length, temperature) / length;
+                positions[2 * i] += dx * step;
+                positions[2 * i + 1] += dy * step;
+            }
+        }
+        return positions;
+    }
+
+}
@@ -1,41 +1,64 @@
 package org.reactome.idg.pairwise.service;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Scanner;
+import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
 import org.reactome.annotate.GeneSetAnnotation;
-import org.reactome.annotate.PathwayBasedAnnotator;
 import org.reactome.idg.model.FeatureType;
+import org.reactome.idg.pairwise.model.CombinedScorePage;
 import org.reactome.idg.pairwise.model.DataDesc;
+import org.reactome.idg.pairwise.model.EnrichmentHeatmap;
 import org.reactome.idg.pairwise.model.GeneCombinedScore;
+import org.reactome.idg.pairwise.model.InteractorScore;
 import org.reactome.idg.pairwise.model.PEsForInteractorResponse;
 import org.reactome.idg.pairwise.model.PairwiseRelationship;
 import org.reactome.idg.pairwise.model.Pathway;
-import org.reactome.idg.pairwise.model.PathwayOverlap;
+import org.reactome.idg.pairwise.model.PrdEnrichment;
+import org.reactome.idg.pairwise.model.PrdHistogram;
 import org.reactome.idg.pairwise.model.network.EdgeData;
 import org.reactome.idg.pairwise.model.network.Element;
 import org.reactome.idg.pairwise.model.network.NodeData;
+import org.reactome.idg.pairwise.model.network.PathwayNetwork;
 import org.reactome.idg.pairwise.model.pathway.GraphHierarchy;
 import org.reactome.idg.pairwise.model.pathway.GraphPathway;
 import org.reactome.idg.pairwise.model.pathway.HierarchyResponseWrapper;
+import org.reactome.idg.pairwise.util.CombinedScores;
 import org.reactome.idg.pairwise.util.FourColorGradient;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.reactome.idg.pairwise.util.RelationshipCodec;
+import org.reactome.idg.pairwise.util.TermResolver;
+import org.reactome.idg.pairwise.util.WeightedLruCache;
+import org.reactome.idg.pairwise.web.errors.BadRequestException;
 import org.reactome.idg.pairwise.web.errors.InternalServerError;
 import org.reactome.idg.pairwise.web.errors.ResourceNotFoundException;
 import org.slf4j.Logger;
@@ -43,15 +66,14 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.mongodb.BasicDBObject;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Updates;
 
 @Service
@@ -60,20 +82,32 @@ public class PairwiseService {
     //mongoDb collections
     private final String DATA_DESCRIPTIONS_COL_ID = "datadescriptions";
     private final String GENE_INDEX_COL_ID = "GENE_INDEX";
-    private final String RELATIONSHIP_COL_ID = "relationships";
     private final String REACTOME_ANNOTATED_GENES_COL_ID = "REACTOME_ANNOTATED_GENES";
     private final String REACTOME_PATHWAYS_CACHE_COL_ID = "reactome_pathways";
+    private final String PRD_HISTOGRAMS_COL_ID = "prd_histograms";
+    // Also dropped by PathwayService when the pathway snapshot is replaced
+    static final String ENRICHMENT_CACHE_COL_ID = "enrichment_cache";
+    // The document listing precomputed cutoffs in enrichment_cache. Other ids are gene:cutoff.
+    private final String ENRICHMENT_CUTOFFS_ID = "cutoffs";
 
     private final String UNIPROT_TO_GENE_FILE_NAME = "GeneToUniProt.txt";
 
     //to reference documents on collections
     private final String COMBINED_SCORE = "combined_score";
+    private final int MAX_COMBINED_SCORE_PAGE_SIZE = 10000;
+    // PRD cutoffs of the precomputed histograms: 0.0, 0.05, ..., 0.95
+    private final int PRD_HISTOGRAM_BUCKETS = 20;
+    private final int MAX_PRD_SWEEP_CUTOFFS = 100;
+    private final int MAX_GENE_SET_SIZE = 50000;
 
     private static final Logger logger = LoggerFactory.getLogger(PairwiseService.class);
 
     @Autowired
     private MongoDatabase database;
 
+    @Autowired
+    private RelationshipRepository relationshipRepository;
+
     @Autowired
     private ServiceConfig config;
 
@@ -82,19 +116,43 @@ public class PairwiseService {
 
     FourColorGradient fourColorGradient;
 
+    // Lazy fields are volatile and loaded under their own locks so that a slow loader, e.g. the event
+    // hierarchy from the content service, doesn't block queries needing other fields.
     // Cached index to gene for performance
-    private Map<Integer, String> indexToGene;
-    //TODO: One-to-one mapping between UniProt and gene symbols are most likely not right.
-    // This should be improved in the future.
+    private volatile GeneSymbolTable geneSymbolTable;
+    private final Object geneSymbolTableLock = new Object();
     // Cached uniprot to gene mapping
-    private Map<String, String> uniprotToGene;
-    private Map<String, String> geneToUniprot;
-    private Set<String> reactomeAnnotatedGenes;
+    private volatile TermResolver termResolver;
+    private final Object termResolverLock = new Object();
+    private volatile Set<String> reactomeAnnotatedGenes;
+    private final Object reactomeAnnotatedGenesLock = new Object();
     private int totalReactomeGenes;
 
     //cached EventHierarchy
-    private GraphHierarchy graphHierarchy;
-    private PathwayBasedAnnotator annotator;
+    private volatile GraphHierarchy graphHierarchy;
+    private final Object graphHierarchyLock = new Object();
+    private volatile EnrichmentEngine enrichmentEngine;
+    private final Object enrichmentEngineLock = new Object();
+    // Enrichment results shared by the pathway, network and download queries
+    private volatile WeightedLruCache<EnrichmentKey, List<Pathway>> enrichmentCache;
+    // Node coordinates of networks keyed as enrichment results
+    private volatile WeightedLruCache<EnrichmentKey, Map<String, double[]>> networkLayoutCache;
+    private final Object cacheLock = new Object();
+    // Cutoffs in enrichment_cache so that other cutoffs are not looked up there
+    private volatile Set<Float> precomputedCutoffs;
+    // reactome_pathways in memory for networks
+    private volatile PathwayOverlapGraph pathwayOverlapGraph;
+    private final Object pathwayOverlapGraphLock = new Object();
+    // In-memory relationships. Used only when it is enabled in the configuration.
+    private volatile RelationshipIndex relationshipIndex;
+    private boolean relationshipSnapshotFailed;
+    private final Object relationshipIndexLock = new Object();
+    // Used to assemble results of batch queries
+    private volatile ExecutorService batchExecutor;
+    private final Object batchExecutorLock = new Object();
+    private volatile CombinedScoreMatrix combinedScoreMatrix;
+    private boolean combinedScoreMatrixFailed;
+    private final Object combinedScoreMatrixLock = new Object();
 
     public PairwiseService() {
         fourColorGradient = new FourColorGradient();
@@ -105,35 +163,39 @@ public class PairwiseService {
     }
 
     /**
-     * Actually fills uniprotToGene and geneToUniprot map
+     * Get the resolver for gene symbols and UniProt accessions, which is loaded at the first call.
+     * @return
      */
-    private void loadUniProtToGene() {
-        uniprotToGene = new HashMap<>();
-        InputStream is = getClass().getClassLoader().getResourceAsStream(UNIPROT_TO_GENE_FILE_NAME);
-        Scanner scanner = new Scanner(is);
-        String line = scanner.nextLine(); // Escape one line
-        while ((line = scanner.nextLine()) != null) {
-            String[] tokens = line.split("\t");
-            uniprotToGene.put(tokens[0], tokens[1]);
-            if (!scanner.hasNextLine())
-                break;
+    public TermResolver getTermResolver() {
+        TermResolver resolver = termResolver;
+        if (resolver != null)
+            return resolver;
+        synchronized (termResolverLock) {
+            if (termResolver == null) {
+                try (InputStream is = getClass().getClassLoader().getResourceAsStream(UNIPROT_TO_GENE_FILE_NAME)) {
+                    termResolver = TermResolver.load(is);
+                }
+                catch(IOException e) {
+                    logger.error("Cannot load " + UNIPROT_TO_GENE_FILE_NAME + ": " + e.getMessage(), e);
+                    throw new InternalServerError("Cannot load the UniProt to gene mapping.");
+                }
+            }
+            return termResolver;
         }
-        scanner.close();
-        geneToUniprot = new HashMap<>();
-        uniprotToGene.forEach((u, g) -> geneToUniprot.put(g, u));
     }
 
-
+    /**
+     * @return a read-only one-to-one map. Use getTermResolver() for many-to-many mappings.
+     */
     public Map<String, String> getUniProtToGene() {
-        if (uniprotToGene == null) {
-            loadUniProtToGene();
-        }
-        return uniprotToGene;
+        return getTermResolver().getUniProtToGene();
     }
 
+    /**
+     * @return a read-only one-to-one map. Use getTermResolver() for many-to-many mappings.
+     */
     public Map<String, String> getGeneToUniProt(){
-        if(geneToUniprot == null) loadUniProtToGene();
-        return geneToUniprot;
+        return getTermResolver().getGeneToUniProt();
     }
 
     public int getTotalReactomeGenes() {
@@ -147,12 +209,30 @@ public class PairwiseService {
     }
 
     public Set<String> getReactomeAnnotatedGenes(){
-        if(this.reactomeAnnotatedGenes != null) return this.reactomeAnnotatedGenes;
-
-        Document doc = database.getCollection(REACTOME_ANNOTATED_GENES_COL_ID).find().first();
-        reactomeAnnotatedGenes = new HashSet<>((List<String>)doc.get("reactomeAnnotatedGenes"));
+        Set<String> genes = reactomeAnnotatedGenes;
+        if(genes != null) return genes;
+        synchronized (reactomeAnnotatedGenesLock) {
+            if(reactomeAnnotatedGenes == null) {
+                Document doc = database.getCollection(REACTOME_ANNOTATED_GENES_COL_ID).find().first();
+                reactomeAnnotatedGenes = new HashSet<>((List<String>)doc.get("reactomeAnnotatedGenes"));
+            }
+            return reactomeAnnotatedGenes;
+        }
+    }
 
-        return reactomeAnnotatedGenes;
+    /**
+     * Get the event hierarchy, which is loaded at the first call.
+     * @return
+     */
+    public GraphHierarchy getGraphHierarchy() {
+        GraphHierarchy hierarchy = graphHierarchy;
+        if (hierarchy != null)
+            return hierarchy;
+        synchronized (graphHierarchyLock) {
+            if (graphHierarchy == null)
+                loadGraphHierarchy();
+            return graphHierarchy;
+        }
     }
 
     /**
@@ -178,25 +258,159 @@ public class PairwiseService {
     public List<PairwiseRelationship> queryRelsForProteins(List<String> proteins,
                                                            List<String> descIds,
                                                            Boolean numberOnly) {
-        Map<String, String> uniprotToGenes = getUniProtToGene();
-        List<String> genes = proteins.stream()
-                .map(p -> uniprotToGenes.get(p))
-                .distinct() // Remove duplication
-                .collect(Collectors.toList());
+        Map<String, String> geneToProtein = mapProteinsToGenes(proteins);
+        List<String> genes = new ArrayList<>(geneToProtein.keySet());
         // Since in rare cases, more than one gene may be mapped to the same UniProt id.
         // Therefore, we may get inconsistent numbers using genes. So always query 
         // full genes first. 
         List<PairwiseRelationship> rels = queryRelsForGenes(genes, descIds, false);
+        convertRelsToProteins(rels, geneToProtein, numberOnly);
+        return rels;
+    }
+
+    /**
+     * @param proteins
+     * @return genes mapped to the queried accessions in the order of the passed proteins
+     */
+    private Map<String, String> mapProteinsToGenes(List<String> proteins) {
+        TermResolver resolver = getTermResolver();
+        // Keep the queried accession so that it is returned as is
+        Map<String, String> geneToProtein = new LinkedHashMap<>();
+        for (String protein : proteins) {
+            String gene = resolver.getGene(protein);
+            if (gene != null)
+                geneToProtein.putIfAbsent(gene, protein);
+        }
+        return geneToProtein;
+    }
+
+    /**
+     * The streaming version of queryRelsForGenes(List, List, Boolean). Relationships are written
+     * to the passed stream as a JSON array while the documents are read.
+     * @param genes
+     * @param descIds
+     * @param numberOnly
+     * @param os
+     * @throws IOException
+     */
+    public void streamRelsForGenes(List<String> genes,
+                                   List<String> descIds,
+                                   Boolean numberOnly,
+                                   OutputStream os) throws IOException {
+        RelationshipIndex index = getRelationshipIndex();
+        try (RelationshipStreamWriter writer = new RelationshipStreamWriter(os, getGeneSymbolTable(index), null, numberOnly)) {
+            streamRels(index, genes, descIds, numberOnly, null, writer);
+            writer.finish();
+        }
+    }
+
+    /**
+     * The streaming version of queryRelsForProteins(List, List, Boolean).
+     * @param proteins
+     * @param descIds
+     * @param numberOnly
+     * @param os
+     * @throws IOException
+     */
+    public void streamRelsForProteins(List<String> proteins,
+                                      List<String> descIds,
+                                      Boolean numberOnly,
+                                      OutputStream os) throws IOException {
+        Map<String, String> geneToProtein = mapProteinsToGenes(proteins);
+        RelationshipIndex index = getRelationshipIndex();
+        try (RelationshipStreamWriter writer = new RelationshipStreamWriter(os, getGeneSymbolTable(index), getTermResolver(), numberOnly)) {
+            // Partners have to be mapped to UniProt before counting
+            streamRels(index, new ArrayList<>(geneToProtein.keySet()), descIds, false, geneToProtein, writer);
+            writer.finish();
+        }
+    }
+
+    private void streamRels(RelationshipIndex index,
+                            List<String> genes,
+                            List<String> descIds,
+                            boolean countOnly,
+                            Map<String, String> geneToTerm,
+                            RelationshipStreamWriter writer) throws IOException {
+        Map<String, DataDesc> idToDesc = createIdToDesc(descIds);
+        if (index != null) {
+            for (String gene : new LinkedHashSet<>(genes)) {
+                int geneIndex = gene == null ? -1 : index.getGeneIndex(gene);
+                if (geneIndex < 0)
+                    continue;
+                String term = geneToTerm == null ? gene : geneToTerm.get(gene);
+                for (String descId : new LinkedHashSet<>(descIds)) {
+                    int posNum = index.getPosCount(descId, geneIndex);
+                    int negNum = index.getNegCount(descId, geneIndex);
+                    if (posNum == 0 && negNum == 0)
+                        continue;
+                    if (countOnly)
+                        writer.writeNumbers(term,
+                                            idToDesc.get(descId),
+                                            posNum > 0 ? posNum : null,
+                                            negNum > 0 ? negNum : null);
+                    else
+                        writer.write(term,
+                                     idToDesc.get(descId),
+                                     posNum > 0 ? index.getPos(descId, geneIndex) : null,
+                                     negNum > 0 ? index.getNeg(descId, geneIndex) : null);
+                }
+            }
+            return;
+        }
+        if (countOnly) {
+            for (Document result : relationshipRepository.aggregateRelNumbers(genes, descIds)) {
+                String gene = result.getString("_id");
+                String term = geneToTerm == null ? gene : geneToTerm.get(gene);
+                for (String descId : new LinkedHashSet<>(descIds)) {
+                    Object value = result.get(descId);
+                    if (!(value instanceof Document))
+                        continue;
+                    Integer posNum = RelationshipRepository.decodeRelNumber(((Document) value).get("posNum"));
+                    Integer negNum = RelationshipRepository.decodeRelNumber(((Document) value).get("negNum"));
+                    if (posNum != null || negNum != null)
+                        writer.writeNumbers(term, idToDesc.get(descId), posNum, negNum);
+                }
+            }
+            return;
+        }
+        // Only one document is held at a time
+        try (MongoCursor<Document> cursor = relationshipRepository.findGenes(genes, descIds).iterator()) {
+            while (cursor.hasNext()) {
+                Document result = cursor.next();
+                String gene = result.getString("_id");
+                String term = geneToTerm == null ? gene : geneToTerm.get(gene);
+                for (String key : result.keySet()) {
+                    if (!descIds.contains(key))
+                        continue;
+                    Document relDoc = (Document) result.get(key);
+                    writer.write(term,
+                                 idToDesc.get(key),
+                                 RelationshipRepository.decodeIndices(relDoc, "pos"),
+                                 RelationshipRepository.decodeIndices(relDoc, "neg"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace genes in relationships queried with numberOnly = false by UniProt accessions.
+     * @param rels
+     * @param geneToProtein the queried accessions for the query genes
+     * @param numberOnly
+     */
+    private void convertRelsToProteins(List<PairwiseRelationship> rels,
+                                       Map<String, String> geneToProtein,
+                                       Boolean numberOnly) {
+        TermResolver resolver = getTermResolver();
         // Need to add UniProt ids back to relationships
         for (PairwiseRelationship rel : rels) {
-            rel.setGene(geneToUniprot.get(rel.getGene()));
+            rel.setGene(geneToProtein.get(rel.getGene()));
             // Need to add UniProt ids back to relationships
             List<String> posGenes = rel.getPosGenes();
             if (posGenes != null) {
                 List<String> posProteins = posGenes.stream()
-                        .map(g -> geneToUniprot.get(g))
+                        .flatMap(g -> resolver.getUniProts(g).stream())
                         .distinct()
-                        .filter(x-> x!=null)
                         .collect(Collectors.toList());
                 if (numberOnly) {
                     rel.setPosNum(posProteins.size());
@@ -209,9 +423,8 @@ public class PairwiseService {
             List<String> negGenes = rel.getNegGenes();
             if (negGenes != null) {
                 List<String> negProteins = negGenes.stream()
-                        .map(g -> geneToUniprot.get(g))
+                        .flatMap(g -> resolver.getUniProts(g).stream())
                         .distinct()
-                        .filter(x-> x!=null)
                         .collect(Collectors.toList());
                 if (numberOnly) {
                     rel.setNegNum(negProteins.size());
@@ -221,21 +434,22 @@ public class PairwiseService {
                     rel.setNegGenes(negProteins);
             }
         }
-        return rels;
     }
     
 	public List<PairwiseRelationship> queryRelsForTerm(String term, List<String> descIds, Boolean numberOnly) {
 
 		List<PairwiseRelationship> rtn = new ArrayList<>();
 		String gene = getGeneForTerm(term);
+		if (gene == null)
+			return rtn;
 
-		// if the gene and searched term are the same, the user entered a gene
-		if (gene.equals(term)) {
+		// the user entered a gene
+		if (getTermResolver().isGene(term)) {
 			List<String> genes = new ArrayList<>();
 			genes.add(gene);
 			rtn = (queryRelsForGenes(genes, descIds, numberOnly));
 		}
-		// if the gene and searched term do not match, the user entered a UniProt
+		// otherwise the user entered a UniProt
 		else {
 			List<String> termAsList = new ArrayList<>();
 			termAsList.add(term);
@@ -244,6 +458,107 @@ public class PairwiseService {
 
 		return rtn;
 	}
+
+    /**
+     * Query relationships for a list of terms, genes or UniProt accessions, in one call. All terms are
+     * resolved first and their relationship documents are fetched by a single query or from the
+     * relationship index. Relationships for each term are then assembled in parallel.
+     * @param terms
+     * @param descIds
+     * @param numberOnly
+     * @return a map from each passed term to its relationships in the order of the passed terms. A term
+     * that cannot be resolved is mapped to an empty list.
+     */
+    public Map<String, List<PairwiseRelationship>> queryRelsForTerms(List<String> terms,
+                                                                     List<String> descIds,
+                                                                     Boolean numberOnly) {
+        List<String> distinctTerms = new ArrayList<>(new LinkedHashSet<>(terms));
+        int maxTerms = getBatchMaxTerms();
+        if (distinctTerms.size() > maxTerms)
+            throw new BadRequestException("Too many terms: " + distinctTerms.size() + ". The maximum is " + maxTerms + ".");
+        TermResolver resolver = getTermResolver();
+        Map<String, String> termToGene = new HashMap<>();
+        for (String term : distinctTerms) {
+            String gene = resolver.resolveGene(term);
+            if (gene != null)
+                termToGene.put(term, gene);
+        }
+        RelationshipIndex index = getRelationshipIndex();
+        Map<String, Document> geneToDoc = new HashMap<>();
+        if (index == null && termToGene.size() > 0) {
+            FindIterable<Document> results = relationshipRepository.findGenes(new HashSet<>(termToGene.values()), descIds);
+            for (Document result : results)
+                geneToDoc.put(result.getString("_id"), result);
+        }
+        Map<String, DataDesc> idToDesc = createIdToDesc(descIds);
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
+        ExecutorService executor = getBatchExecutor();
+        Map<String, Future<List<PairwiseRelationship>>> termToFuture = new HashMap<>();
+        for (String term : termToGene.keySet()) {
+            String gene = termToGene.get(term);
+            boolean isProtein = !resolver.isGene(term);
+            termToFuture.put(term, executor.submit(() -> {
+                // Partners of a protein are counted after they are mapped to UniProt
+                boolean geneNumberOnly = numberOnly && !isProtein;
+                List<PairwiseRelationship> rels;
+                if (index != null)
+                    rels = queryRelsForGenesInIndex(index, Collections.singletonList(gene), descIds, geneNumberOnly);
+                else if (geneToDoc.containsKey(gene))
+                    rels = createRelsFromDoc(geneToDoc.get(gene), descIds, idToDesc, symbolTable, geneNumberOnly);
+                else
+                    rels = new ArrayList<>();
+                if (isProtein)
+                    convertRelsToProteins(rels, Collections.singletonMap(gene, term), numberOnly);
+                return rels;
+            }));
+        }
+        Map<String, List<PairwiseRelationship>> rtn = new LinkedHashMap<>();
+        for (String term : distinctTerms) {
+            Future<List<PairwiseRelationship>> future = termToFuture.get(term);
+            if (future == null) {
+                rtn.put(term, new ArrayList<>());
+                continue;
+            }
+            try {
+                rtn.put(term, future.get());
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InternalServerError("Interrupted while querying relationships.");
+            }
+            catch(ExecutionException e) {
+                logger.error("Cannot query relationships for " + term + ": " + e.getCause().getMessage(), e.getCause());
+                throw new InternalServerError("Cannot query relationships for " + term + ".");
+            }
+        }
+        return rtn;
+    }
+
+    private int getBatchMaxTerms() {
+        if (config == null || config.getBatchMaxTerms() <= 0)
+            return ServiceConfig.DEFAULT_BATCH_MAX_TERMS;
+        return config.getBatchMaxTerms();
+    }
+
+    private ExecutorService getBatchExecutor() {
+        ExecutorService executor = batchExecutor;
+        if (executor != null)
+            return executor;
+        synchronized (batchExecutorLock) {
+            if (batchExecutor != null)
+                return batchExecutor;
+            int threads = config == null ? 0 : config.getBatchThreads();
+            if (threads <= 0)
+                threads = Runtime.getRuntime().availableProcessors();
+            // Use daemon threads so that a shutdown is not blocked by idle threads
+            batchExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "pairwise-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            return batchExecutor;
+        }
+    }
     
 
     public List<PairwiseRelationship> queryRelsForProteins(List<String> proteins,
@@ -279,42 +594,295 @@ public class PairwiseService {
     public List<PairwiseRelationship> queryRelsForGenes(List<String> genes,
                                                         List<String> descIds,
                                                         Boolean numberOnly) {
-        Map<Integer, String> indexToGene = null;
-        if (!numberOnly) // Need to load this map
-            indexToGene = getIndexToGene();
+        RelationshipIndex index = getRelationshipIndex();
+        if (index != null)
+            return queryRelsForGenesInIndex(index, genes, descIds, numberOnly);
+        if (numberOnly)
+            return queryRelNumbersForGenes(genes, descIds, true);
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
         List<PairwiseRelationship> rtn = new ArrayList<>();
-        FindIterable<Document> results = database.getCollection(RELATIONSHIP_COL_ID)
-                .find(Filters.in("_id", genes))
-                .projection(Projections.include(descIds));
+        FindIterable<Document> results = relationshipRepository.findGenes(genes, descIds);
         Map<String, DataDesc> idToDesc = createIdToDesc(descIds);
-        for (Document result : results) {
+        for (Document result : results)
+            rtn.addAll(createRelsFromDoc(result, descIds, idToDesc, symbolTable, numberOnly));
+        return rtn;
+    }
+
+    /**
+     * Query the numbers of partners only.
+     * @param genes
+     * @param descIds
+     * @param useAggregation true to count partners in the database so that only numbers are
+     * returned. false to fetch the lists and count them here, which is kept for comparison.
+     * @return
+     */
+    public List<PairwiseRelationship> queryRelNumbersForGenes(List<String> genes,
+                                                              List<String> descIds,
+                                                              boolean useAggregation) {
+        List<PairwiseRelationship> rtn = new ArrayList<>();
+        Map<String, DataDesc> idToDesc = createIdToDesc(descIds);
+        if (!useAggregation) {
+            FindIterable<Document> results = relationshipRepository.findGenes(genes, descIds);
+            for (Document result : results)
+                rtn.addAll(createRelsFromDoc(result, descIds, idToDesc, null, true));
+            return rtn;
+        }
+        for (Document result : relationshipRepository.aggregateRelNumbers(genes, descIds)) {
             String gene = result.getString("_id");
-            for (String key : result.keySet()) {
-                if (descIds.contains(key)) {
-                    // This should be a relationship
-                    PairwiseRelationship rel = new PairwiseRelationship();
-                    rtn.add(rel);
-                    rel.setGene(gene);
-                    rel.setDataDesc(idToDesc.get(key));
-                    Document relDoc = (Document) result.get(key);
-                    if (numberOnly)
-                        fillGeneNumbersForRel(rel, relDoc);
-                    else
-                        fillGenesForRel(indexToGene, rel, relDoc);
+            for (String descId : new LinkedHashSet<>(descIds)) {
+                Object value = result.get(descId);
+                if (!(value instanceof Document))
+                    continue;
+                Integer posNum = RelationshipRepository.decodeRelNumber(((Document) value).get("posNum"));
+                Integer negNum = RelationshipRepository.decodeRelNumber(((Document) value).get("negNum"));
+                if (posNum == null && negNum == null)
+                    continue; // No relationship document for this DataDesc
+                PairwiseRelationship rel = new PairwiseRelationship();
+                rtn.add(rel);
+                rel.setGene(gene);
+                rel.setDataDesc(idToDesc.get(descId));
+                rel.setPosNum(posNum);
+                rel.setNegNum(negNum);
+            }
+        }
+        return rtn;
+    }
+
+    private List<PairwiseRelationship> createRelsFromDoc(Document result,
+                                                         List<String> descIds,
+                                                         Map<String, DataDesc> idToDesc,
+                                                         GeneSymbolTable symbolTable,
+                                                         Boolean numberOnly) {
+        List<PairwiseRelationship> rtn = new ArrayList<>();
+        String gene = result.getString("_id");
+        for (String key : result.keySet()) {
+            if (descIds.contains(key)) {
+                // This should be a relationship
+                PairwiseRelationship rel = new PairwiseRelationship();
+                rtn.add(rel);
+                rel.setGene(gene);
+                rel.setDataDesc(idToDesc.get(key));
+                Document relDoc = (Document) result.get(key);
+                if (numberOnly)
+                    fillGeneNumbersForRel(rel, relDoc);
+                else
+                    fillGenesForRel(symbolTable, rel, relDoc);
+            }
+        }
+        return rtn;
+    }
+
+    private List<PairwiseRelationship> queryRelsForGenesInIndex(RelationshipIndex index,
+                                                                List<String> genes,
+                                                                List<String> descIds,
+                                                                Boolean numberOnly) {
+        GeneSymbolTable symbolTable = null;
+        if (!numberOnly)
+            symbolTable = index.getGeneSymbolTable();
+        List<PairwiseRelationship> rtn = new ArrayList<>();
+        Map<String, DataDesc> idToDesc = createIdToDesc(descIds);
+        // Keep the same behavior as the $in query: each gene is returned once
+        for (String gene : new LinkedHashSet<>(genes)) {
+            int geneIndex = gene == null ? -1 : index.getGeneIndex(gene);
+            if (geneIndex < 0)
+                continue;
+            for (String descId : new LinkedHashSet<>(descIds)) {
+                int posNum = index.getPosCount(descId, geneIndex);
+                int negNum = index.getNegCount(descId, geneIndex);
+                if (posNum == 0 && negNum == 0)
+                    continue; // No relationship in this DataDesc
+                PairwiseRelationship rel = new PairwiseRelationship();
+                rtn.add(rel);
+                rel.setGene(gene);
+                rel.setDataDesc(idToDesc.get(descId));
+                if (numberOnly) {
+                    if (posNum > 0)
+                        rel.setPosNum(posNum);
+                    if (negNum > 0)
+                        rel.setNegNum(negNum);
+                }
+                else {
+                    if (posNum > 0)
+                        rel.setPosGenes(mapIndicesToGenes(symbolTable, index.getPos(descId, geneIndex)));
+                    if (negNum > 0)
+                        rel.setNegGenes(mapIndicesToGenes(symbolTable, index.getNeg(descId, geneIndex)));
                 }
             }
         }
         return rtn;
     }
 
+    /**
+     * Get the relationship index, which is opened or loaded at the first call. A configured snapshot
+     * file is memory-mapped. Otherwise, the relationships collection is loaded into memory if enabled.
+     * @return null if neither a snapshot file nor the in-memory index is configured.
+     */
+    public RelationshipIndex getRelationshipIndex() {
+        RelationshipIndex index = relationshipIndex;
+        if (index != null || config == null)
+            return index;
+        synchronized (relationshipIndexLock) {
+            if (relationshipIndex == null)
+                relationshipIndex = loadRelationshipIndex();
+            return relationshipIndex;
+        }
+    }
+
+    private RelationshipIndex loadRelationshipIndex() {
+        String snapshotFile = config.getRelationshipSnapshotFile();
+        if (!relationshipSnapshotFailed && snapshotFile != null && snapshotFile.trim().length() > 0) {
+            try {
+                MappedRelationshipIndex snapshot = MappedRelationshipIndex.open(new File(snapshotFile.trim()));
+                GeneSymbolTable snapshotTable = snapshot.getGeneSymbolTable();
+                GeneSymbolTable currentTable = getGeneSymbolTable();
+                int mismatch = snapshotTable.findMismatch(currentTable);
+                if (mismatch < 0)
+                    return snapshot;
+                // Don't try again for the following queries
+                relationshipSnapshotFailed = true;
+                logger.error("Relationship snapshot " + snapshotFile + " doesn't match GENE_INDEX: index " + mismatch +
+                             " is " + snapshotTable.getSymbol(mismatch) + " in the snapshot but " +
+                             currentTable.getSymbol(mismatch) + " in GENE_INDEX. Export the snapshot again.");
+            }
+            catch(IOException e) {
+                // Don't try again for the following queries
+                relationshipSnapshotFailed = true;
+                logger.error("Cannot open relationship snapshot " + snapshotFile + ": " + e.getMessage(), e);
+            }
+        }
+        if (config.isRelationshipIndexEnabled())
+            return loadCsrRelationshipIndex();
+        return null;
+    }
+
+    /**
+     * @param index
+     * @return the symbol table for gene indices returned by the index or the current GENE_INDEX
+     * if the index is null.
+     */
+    private GeneSymbolTable getGeneSymbolTable(RelationshipIndex index) {
+        return index == null ? getGeneSymbolTable() : index.getGeneSymbolTable();
+    }
+
+    private CsrRelationshipIndex loadCsrRelationshipIndex() {
+        return CsrRelationshipIndex.load(relationshipRepository.getCollection(), getGeneSymbolTable());
+    }
+
+    /**
+     * Export the relationships, GENE_INDEX and datadescriptions collections into a snapshot file
+     * that can be used by setting relationship.snapshot.file.
+     * @param file
+     * @throws IOException
+     */
+    public void exportRelationshipSnapshot(File file) throws IOException {
+        CsrRelationshipIndex index = loadCsrRelationshipIndex();
+        new RelationshipSnapshotWriter().write(file, index, listDataDesc());
+    }
+
+    /**
+     * Get the combined score matrix, which is opened or loaded at the first call. A configured file is
+     * memory-mapped. Otherwise, combined scores are loaded from MongoDB if enabled.
+     * @return null if neither a file nor loading is configured.
+     */
+    public CombinedScoreMatrix getCombinedScoreMatrix() {
+        CombinedScoreMatrix matrix = combinedScoreMatrix;
+        if (matrix != null || config == null)
+            return matrix;
+        synchronized (combinedScoreMatrixLock) {
+            if (combinedScoreMatrix == null)
+                combinedScoreMatrix = loadCombinedScoreMatrix();
+            return combinedScoreMatrix;
+        }
+    }
+
+    private CombinedScoreMatrix loadCombinedScoreMatrix() {
+        String file = config.getCombinedScoreMatrixFile();
+        if (!combinedScoreMatrixFailed && file != null && file.trim().length() > 0) {
+            try {
+                return CombinedScoreMatrix.open(new File(file.trim()));
+            }
+            catch(IOException e) {
+                combinedScoreMatrixFailed = true;
+                logger.error("Cannot open combined score matrix " + file + ": " + e.getMessage(), e);
+            }
+        }
+        if (config.isCombinedScoreMatrixEnabled())
+            return CombinedScoreMatrix.load(relationshipRepository, getGeneSymbolTable());
+        return null;
+    }
+
+    /**
+     * Export combined scores into a file that can be used by setting combined.score.matrix.file.
+     * @param file
+     * @throws IOException
+     */
+    public void exportCombinedScoreMatrix(File file) throws IOException {
+        CombinedScoreMatrix matrix = CombinedScoreMatrix.load(relationshipRepository, getGeneSymbolTable());
+        matrix.write(file);
+    }
+
+    /**
+     * Find genes having combined scores greater than prd with any of the passed terms. The combined score
+     * matrix is used if it is available. Otherwise, combined scores of the terms are fetched one by one.
+     * Note that scores from the matrix are in half precision (about three significant digits) and prd is
+     * rounded in the same way before comparison, so a gene having a score very close to prd may be
+     * included or not depending on whether the matrix is configured.
+     * @param terms genes or UniProt ids. The number of distinct terms is limited as in queryRelsForTerms().
+     * @param prd
+     * @return genes to their highest scores with the passed terms
+     */
+    public Map<String, Double> queryCombinedScoreGenesForTerms(List<String> terms, Double prd) {
+        if (prd == null)
+            throw new BadRequestException("prd is required.");
+        Set<String> distinctTerms = new LinkedHashSet<>(terms);
+        // Check before resolving so that an oversized request is rejected without any work
+        int maxTerms = getBatchMaxTerms();
+        if (distinctTerms.size() > maxTerms)
+            throw new BadRequestException("Too many terms: " + distinctTerms.size() + ". The maximum is " + maxTerms + ".");
+        Set<String> genes = new LinkedHashSet<>();
+        for (String term : distinctTerms) {
+            String gene = getGeneForTerm(term);
+            if (gene != null)
+                genes.add(gene);
+        }
+        Map<String, Double> rtn = new HashMap<>();
+        CombinedScoreMatrix matrix = getCombinedScoreMatrix();
+        if (matrix != null) {
+            GeneSymbolTable symbolTable = matrix.getGeneSymbolTable();
+            int[] rows = genes.stream().mapToInt(symbolTable::getIndex).filter(i -> i >= 0).toArray();
+            matrix.findAbove(rows, prd).forEach((index, score) -> {
+                rtn.put(symbolTable.getSymbol(index), Double.parseDouble(Float.toString(score)));
+            });
+            return rtn;
+        }
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
+        for (String gene : genes) {
+            CombinedScores combinedScores = relationshipRepository.findCombinedScores(gene);
+            if (combinedScores == null)
+                continue;
+            int count = combinedScores.countAbove(prd);
+            for (int i = 0; i < count; i++)
+                rtn.merge(symbolTable.getSymbol(combinedScores.getIndex(i)), combinedScores.getScoreAsDouble(i), Math::max);
+        }
+        return rtn;
+    }
+
     public PEsForInteractorResponse queryPEsForTermInteractor(Long dbId, String term, List<Integer> dataDescKeys, Double prd) throws IOException {
 
         term = getGeneForTerm(term);
         if(term == null) throw new ResourceNotFoundException("Could not find term: " + term);
 
+        boolean useCombinedScore = dataDescKeys == null || dataDescKeys.size() == 0 || dataDescKeys.contains(0);
+        RelationshipIndex index = useCombinedScore ? null : getRelationshipIndex(); // combined_score is not in the index
+        List<String> dataDescs = useCombinedScore ? null : this.getDataDescIdsForDigitalKeys(dataDescKeys);
         //get pairwise doc for gene and throw exception if no doc found.
-        Document interactorsDoc = getRelationshipDocForGene(term);
-        if(interactorsDoc == null) throwDocumentNotFound(term);
+        Document interactorsDoc = null;
+        if(index == null) {
+            interactorsDoc = relationshipRepository.findGene(term, useCombinedScore ? Collections.singletonList(COMBINED_SCORE) : dataDescs);
+            if(interactorsDoc == null) throwDocumentNotFound(term);
+        }
+        else if(index.getGeneIndex(term) < 0)
+            throwDocumentNotFound(term);
 
         Map<String, List<Long>> geneToPEMap = callGeneToIdsInPathwayDiagram(dbId);
         if(geneToPEMap == null) {
@@ -326,12 +894,20 @@ public class PairwiseService {
         PEsForInteractorResponse rtn = new PEsForInteractorResponse();
 
         Set<String> interactorGenes = new HashSet<>();
-        if(dataDescKeys == null || dataDescKeys.size() == 0 || dataDescKeys.contains(0)) { //want to get combined score if no data descs passed in or key is 0 for combined score
-            interactorGenes.addAll(this.getCombinedScoresWithCutoff((Document)interactorsDoc.get(COMBINED_SCORE), prd));
+        if(useCombinedScore) { //want to get combined score if no data descs passed in or key is 0 for combined score
+            interactorGenes.addAll(this.getCombinedScoresWithCutoff(CombinedScores.decode(interactorsDoc.get(COMBINED_SCORE)), prd));
             rtn.setDataDescs(Collections.singletonList("combined_score")); //set Combined score if no dataDesc keys passed in
         }
+        else if(index != null) {
+            rtn.setDataDescs(dataDescs); //set data descs on return object
+            GeneSymbolTable symbolTable = index.getGeneSymbolTable();
+            int geneIndex = index.getGeneIndex(term);
+            for(String key : dataDescs) {
+                for(int i : index.getPos(key, geneIndex)) interactorGenes.add(symbolTable.getSymbol(i));
+                for(int i : index.getNeg(key, geneIndex)) interactorGenes.add(symbolTable.getSymbol(i));
+            }
+        }
         else {
-            List<String> dataDescs = this.getDataDescIdsForDigitalKeys(dataDescKeys);
             rtn.setDataDescs(dataDescs); //set data descs on return object
             for(String key : interactorsDoc.keySet()) {
                 if(!dataDescs.contains(key)) continue;
@@ -412,44 +988,129 @@ public class PairwiseService {
     }
 
     private void fillGeneNumbersForRel(PairwiseRelationship rel, Document relDoc) {
-        List<Integer> indexList = (List<Integer>) relDoc.get("pos");
-        if (indexList != null)
-            rel.setPosNum(indexList.size());
-        indexList = (List<Integer>) relDoc.get("neg");
-        if (indexList != null) {
-            rel.setNegNum(indexList.size());
+        // Only the header is read for the encoded format
+        Object value = relDoc.get("pos");
+        if (value != null)
+            rel.setPosNum(RelationshipCodec.size(value));
+        value = relDoc.get("neg");
+        if (value != null) {
+            rel.setNegNum(RelationshipCodec.size(value));
         }
     }
 
-    private void fillGenesForRel(Map<Integer, String> indexToGene, PairwiseRelationship rel, Document relDoc) {
-        List<Integer> indexList = (List<Integer>) relDoc.get("pos");
-        if (indexList != null) {
-            List<String> geneList = indexList.stream()
-                    .map(i -> indexToGene.get(i))
-                    .collect(Collectors.toList());
+    private void fillGenesForRel(GeneSymbolTable symbolTable, PairwiseRelationship rel, Document relDoc) {
+        int[] indices = RelationshipCodec.decode(relDoc.get("pos"));
+        if (indices != null)
+            rel.setPosGenes(mapIndicesToGenes(symbolTable, indices));
+        indices = RelationshipCodec.decode(relDoc.get("neg"));
+        if (indices != null)
+            rel.setNegGenes(mapIndicesToGenes(symbolTable, indices));
+    }
+
+    private List<String> mapIndicesToGenes(GeneSymbolTable symbolTable, int[] indices) {
+        List<String> geneList = new ArrayList<>(indices.length);
+        for (int index : indices) {
+            String gene = symbolTable.getSymbol(index);
             //remove null that results from gene name mapping between species
-            geneList.removeAll(Collections.singletonList("null"));
-            rel.setPosGenes(geneList);
+            if ("null".equals(gene))
+                continue;
+            geneList.add(gene);
         }
-        indexList = (List<Integer>) relDoc.get("neg");
-        if (indexList != null) {
-            List<String> geneList = indexList.stream()
-                    .map(i -> indexToGene.get(i))
-                    .collect(Collectors.toList());
-            //remove null that results from gene name mapping between species
-            geneList.removeAll(Collections.singletonList("null"));
-            rel.setNegGenes(geneList);
+        return geneList;
+    }
+
+    /**
+     * @return statistics of the relationship document cache.
+     */
+    public Map<String, Number> getRelationshipCacheStats() {
+        return relationshipRepository.getCacheStats();
+    }
+
+    /**
+     * Clear the relationship document cache and enrichment results computed from the cached
+     * documents. This should be called after the relationships collection is reloaded.
+     */
+    public void invalidateRelationshipCache() {
+        relationshipRepository.invalidateCache();
+        precomputedCutoffs = null; // enrichment_cache may be precomputed again by another process
+        getEnrichmentCache().invalidateAll();
+        getNetworkLayoutCache().invalidateAll();
+    }
+
+    /**
+     * @return hit, miss and eviction counters of the enrichment result cache.
+     */
+    public Map<String, Number> getEnrichmentCacheStats() {
+        return getEnrichmentCache().getStats();
+    }
+
+    private WeightedLruCache<EnrichmentKey, List<Pathway>> getEnrichmentCache() {
+        WeightedLruCache<EnrichmentKey, List<Pathway>> cache = enrichmentCache;
+        if (cache != null)
+            return cache;
+        synchronized (cacheLock) {
+            if (enrichmentCache == null) {
+                long maxBytes = config == null ? 0 : config.getEnrichmentCacheMaxBytes();
+                enrichmentCache = new WeightedLruCache<>(maxBytes, PairwiseService::estimatePathwayBytes);
+            }
+            return enrichmentCache;
         }
     }
 
+    private static long estimatePathwayBytes(List<Pathway> pathways) {
+        long size = 48;
+        for (Pathway pathway : pathways)
+            size += 128 + 2L * (pathway.getStId().length() + (pathway.getName() == null ? 0 : pathway.getName().length()));
+        return size;
+    }
+
+    /**
+     * Fetch enriched pathways from the cache or compute them. Cached lists are never returned
+     * so that callers can modify their copies, e.g. setting weightedTDL.
+     * @param key
+     * @param loader
+     * @return null if loader returns null, which is not cached.
+     */
+    private List<Pathway> getCachedEnrichment(EnrichmentKey key, Supplier<List<Pathway>> loader) {
+        WeightedLruCache<EnrichmentKey, List<Pathway>> cache = getEnrichmentCache();
+        List<Pathway> pathways = cache.get(key);
+        if (pathways == null) {
+            pathways = loader.get();
+            if (pathways == null)
+                return null;
+            cache.put(key, copyPathways(pathways));
+            return pathways;
+        }
+        return copyPathways(pathways);
+    }
+
+    private void invalidateEnrichment(String gene) {
+        getEnrichmentCache().invalidateIf(key -> key.gene.equals(gene));
+        getNetworkLayoutCache().invalidateIf(key -> key.gene.equals(gene));
+    }
+
+    private List<Pathway> copyPathways(List<Pathway> pathways) {
+        List<Pathway> rtn = new ArrayList<>(pathways.size());
+        for (Pathway pathway : pathways) {
+            Pathway copy = new Pathway(pathway.getStId(),
+                    pathway.getName(),
+                    pathway.getFdr(),
+                    pathway.getpVal(),
+                    pathway.isBottomLevel());
+            copy.setNumGenes(pathway.getNumGenes());
+            copy.setWeightedTDL(pathway.getWeightedTDL());
+            rtn.add(copy);
+        }
+        return rtn;
+    }
+
     /**
      * Returns document from relationships doc for gene
      * @param gene
      * @return
      */
     public Document getRelationshipDocForGene(String gene) {
-        return database.getCollection(RELATIONSHIP_COL_ID)
-                .find(Filters.eq("_id", gene)).first();
+        return relationshipRepository.findGene(gene);
     }
 
     public Set<String> getGenesFromRelDoc(Document relDoc){
@@ -462,20 +1123,22 @@ public class PairwiseService {
 
     public Set<String> getPosGenesFromRelDoc(Document relDoc){
         Set<String> rtn = new HashSet<>();
-        Map<Integer, String> indexToGene = getIndexToGene();
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
 
-        if(relDoc.containsKey("pos"))
-            rtn.addAll(((List<Integer>)relDoc.get("pos")).stream().map(i -> indexToGene.get(i)).collect(Collectors.toSet()));
+        int[] indices = RelationshipCodec.decode(relDoc.get("pos"));
+        if(indices != null)
+            for(int index : indices) rtn.add(symbolTable.getSymbol(index));
 
         return rtn;
     }
 
     public Set<String> getNegGenesFromRelDoc(Document relDoc){
         Set<String> rtn = new HashSet<>();
-        Map<Integer,String> indexToGene = getIndexToGene();
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
 
-        if(relDoc.containsKey("neg"))
-            rtn.addAll(((List<Integer>)relDoc.get("neg")).stream().map(i -> indexToGene.get(i)).collect(Collectors.toSet()));	
+        int[] indices = RelationshipCodec.decode(relDoc.get("neg"));
+        if(indices != null)
+            for(int index : indices) rtn.add(symbolTable.getSymbol(index));
 
         return rtn;
     }
@@ -487,7 +1150,7 @@ public class PairwiseService {
      * @return
      */
     public HierarchyResponseWrapper queryHierarchhyForTerm(String term) {
-        if(graphHierarchy == null) loadGraphHierarchy();
+        GraphHierarchy graphHierarchy = getGraphHierarchy();
 
         term = getGeneForTerm(term);
         if(term == null) return new HierarchyResponseWrapper(term, new ArrayList<>(), new ArrayList<>());
@@ -514,7 +1177,7 @@ public class PairwiseService {
     }
 
     public List<Pathway> queryPrimaryPathwaysForUniprot(String uniprot) {
-        String gene = this.getUniProtToGene().get(uniprot);
+        String gene = getTermResolver().getGene(uniprot);
         if(gene == null) return null;
         List<Pathway> rtn = this.queryPrimaryPathwaysForGene(gene);
 
@@ -552,30 +1215,122 @@ public class PairwiseService {
         term = getGeneForTerm(term);
         if(term == null) return new ArrayList<>();
 
-        Document relDoc = getRelationshipDocForGene(term);
-        if(relDoc == null) this.throwDocumentNotFound(term);
-
         List<String> descIds = this.getDataDescIdsForDigitalKeys(dataDescKeys);
 
-        Collection<String> interactors = new ArrayList<>();
-        for(String key : relDoc.keySet()) {
-            if(!descIds.contains(key)) continue;
-            Document doc = (Document) relDoc.get(key);
-            interactors.addAll(getGenesFromRelDoc(doc));
+        String gene = term;
+        return getCachedEnrichment(new EnrichmentKey(gene, descIds, null), () -> {
+            Document relDoc = relationshipRepository.findGene(gene, descIds);
+            if(relDoc == null) this.throwDocumentNotFound(gene);
+
+            Collection<String> interactors = new ArrayList<>();
+            for(String key : relDoc.keySet()) {
+                if(!descIds.contains(key)) continue;
+                Document doc = (Document) relDoc.get(key);
+                interactors.addAll(getGenesFromRelDoc(doc));
+            }
+            //if there are no interactors
+            if(interactors.size() < 1) {
+                return null;
+            }
+
+            return getEnrichedPathways(interactors, gene);
+        });
+    }
+
+    /**
+     * Enrich the interactors of a term in each DataDesc and collect p-values and FDRs in a DataDesc x
+     * pathway matrix. DataDescs are enriched in parallel against all pathway bitsets.
+     * @param term
+     * @param dataDescKeys DataDescs to be included. All DataDescs having relationships for the term are
+     * included if this is null or empty. combined_score is not included.
+     * @return null if the term is not found.
+     */
+    public EnrichmentHeatmap queryEnrichmentHeatmapForTerm(String term, List<Integer> dataDescKeys) {
+        String gene = getGeneForTerm(term);
+        if(gene == null) return null;
+
+        Document relDoc;
+        List<String> descIds;
+        if(dataDescKeys == null || dataDescKeys.isEmpty()) {
+            relDoc = relationshipRepository.findGene(gene);
+            if(relDoc == null) return null;
+            descIds = relDoc.keySet().stream()
+                    .filter(key -> !key.equals("_id") && !key.equals(COMBINED_SCORE))
+                    .sorted()
+                    .collect(Collectors.toList());
         }
-        //if there are no interactors
-        if(interactors.size() < 1) {
-            return null;
+        else {
+            descIds = getDataDescIdsForDigitalKeys(dataDescKeys);
+            descIds.remove(COMBINED_SCORE);
+            relDoc = relationshipRepository.findGene(gene, descIds);
+            if(relDoc == null) return null;
         }
 
-        return getEnrichedPathways(interactors, term);
+        EnrichmentEngine engine = getEnrichmentEngine();
+        ExecutorService executor = getBatchExecutor();
+        List<Future<List<GeneSetAnnotation>>> futures = new ArrayList<>();
+        for(String descId : descIds) {
+            Document doc = (Document) relDoc.get(descId);
+            futures.add(executor.submit(() -> {
+                if(doc == null) return new ArrayList<>();
+                return engine.annotate(getGenesFromRelDoc(doc));
+            }));
+        }
+        List<Map<String, GeneSetAnnotation>> rows = new ArrayList<>(futures.size());
+        // The best FDR of each pathway for ordering
+        Map<String, Double> pathwayToFdr = new HashMap<>();
+        try {
+            for(Future<List<GeneSetAnnotation>> future : futures) {
+                Map<String, GeneSetAnnotation> row = new HashMap<>();
+                for(GeneSetAnnotation annotation : future.get()) {
+                    row.put(annotation.getTopic(), annotation);
+                    pathwayToFdr.merge(annotation.getTopic(), Double.parseDouble(annotation.getFdr()), Math::min);
+                }
+                rows.add(row);
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerError("Interrupted while annotating interactors for " + gene);
+        }
+        catch(ExecutionException e) {
+            logger.error(e.getCause().getMessage(), e.getCause());
+            throw new InternalServerError("Could not annotate interactors for " + gene);
+        }
 
+        List<String> pathways = pathwayToFdr.keySet().stream()
+                .sorted(Comparator.comparing((String stId) -> pathwayToFdr.get(stId)).thenComparing(stId -> stId))
+                .collect(Collectors.toList());
+        Map<String, Pathway> pathwayStIdToPathway = pathwayService.getPathwayStIdToPathway(this.getUniProtToGene());
+        List<List<Double>> pValues = new ArrayList<>(rows.size());
+        List<List<Double>> fdrs = new ArrayList<>(rows.size());
+        for(Map<String, GeneSetAnnotation> row : rows) {
+            List<Double> rowPValues = new ArrayList<>(pathways.size());
+            List<Double> rowFdrs = new ArrayList<>(pathways.size());
+            for(String stId : pathways) {
+                GeneSetAnnotation annotation = row.get(stId);
+                rowPValues.add(annotation == null ? null : annotation.getPValue());
+                rowFdrs.add(annotation == null ? null : Double.parseDouble(annotation.getFdr()));
+            }
+            pValues.add(rowPValues);
+            fdrs.add(rowFdrs);
+        }
+        EnrichmentHeatmap rtn = new EnrichmentHeatmap();
+        rtn.setTerm(gene);
+        rtn.setDescIds(descIds);
+        rtn.setPathways(pathways);
+        rtn.setPathwayNames(pathways.stream().map(stId -> pathwayStIdToPathway.get(stId).getName()).collect(Collectors.toList()));
+        rtn.setpValues(pValues);
+        rtn.setFdrs(fdrs);
+        return rtn;
     }
 
-    public List<Element> queryTermToSecondaryPathwaysNetworkWithEnrichment(String term, 
-                                                                           List<Integer> dataDescKeys,
-                                                                           double prd) {
-        //    	Map<Integer, String> indexToGene = this.getIndexToGene();
+    /**
+     * Enriched bottom level pathways for a network sorted by stable ids.
+     */
+    private List<Pathway> queryNetworkPathways(String term, 
+                                               List<Integer> dataDescKeys,
+                                               double prd) {
         List<Pathway> pathways;
         //check if should get combined score pathways or based on dataDescs
         if(dataDescKeys == null || dataDescKeys.size() == 0 || dataDescKeys.contains(0)) 
@@ -584,10 +1339,56 @@ public class PairwiseService {
             pathways = queryTermToSecondaryPathwaysWithEnrichment(term, dataDescKeys, prd);
 
         // Filter to bottom level pathways only
-        pathways = pathways.stream()
+        return pathways.stream()
                 .filter(pathway -> pathway.isBottomLevel())
                 .sorted((p1, p2) -> p1.getStId().compareTo(p2.getStId()))
                 .collect(Collectors.toList());
+    }
+
+    private Element createNetworkNode(Pathway pathway, PathwayOverlapGraph graph, int index) {
+        pathway.setWeightedTDL(graph.getWeightedTDL(index));
+        NodeData nodeData = new NodeData(pathway.getStId(),
+                pathway.getName(),
+                pathway.getWeightedTDL(),
+                pathway.getFdr(),
+                pathway.getpVal(),
+                fourColorGradient.getColor(pathway.getWeightedTDL()));
+        nodeData.setGeneNumber(graph.getGeneNumber(index));
+        return new Element(Element.Group.NODES, nodeData);
+    }
+
+    private Element createNetworkEdge(String from, String to, PathwayOverlapGraph graph, int overlap) {
+        EdgeData data = new EdgeData(from + ":" + to,
+                graph.getSharedGenes(overlap),
+                graph.getHypergeometricScore(overlap),
+                from,
+                to);
+        return new Element(Element.Group.EDGES, data);
+    }
+
+    public List<Element> queryTermToSecondaryPathwaysNetworkWithEnrichment(String term, 
+                                                                           List<Integer> dataDescKeys,
+                                                                           double prd) {
+        return queryTermToSecondaryPathwaysNetworkWithEnrichment(term, dataDescKeys, prd, false);
+    }
+
+    /**
+     * @param term
+     * @param dataDescKeys
+     * @param prd
+     * @param layout true to attach coordinates from layoutNetwork() to nodes
+     * @return
+     */
+    public List<Element> queryTermToSecondaryPathwaysNetworkWithEnrichment(String term, 
+                                                                           List<Integer> dataDescKeys,
+                                                                           double prd,
+                                                                           boolean layout) {
+        List<Pathway> pathways = queryNetworkPathways(term, dataDescKeys, prd);
+
+        PathwayOverlapGraph graph = getPathwayOverlapGraph();
+        int[] indices = new int[pathways.size()];
+        for(int i = 0; i < pathways.size(); i++)
+            indices[i] = graph.getIndex(pathways.get(i).getStId());
 
         List<Element> nodes = new ArrayList<>();
         List<Element> edges = new ArrayList<>();
@@ -598,66 +1399,556 @@ public class PairwiseService {
         for(int i = 0; i < pathways.size(); i++) {
             Pathway from = pathways.get(i);
 
-            //get pathway overlap doc
-            Document pathwayDoc = database.getCollection(REACTOME_PATHWAYS_CACHE_COL_ID).find(Filters.eq("_id", from.getStId())).first();
-            if(pathwayDoc == null) continue;
-            from.setWeightedTDL(pathwayDoc.getDouble("weighted_tdl_average"));
+            //pathways not in reactome_pathways are skipped
+            if(!graph.isLoaded(indices[i])) continue;
             //add from pathways to nodes
-            NodeData nodeData = new NodeData(from.getStId(),
-                    from.getName(),
-                    from.getWeightedTDL(),
-                    from.getFdr(),
-                    from.getpVal(),
-                    fourColorGradient.getColor(from.getWeightedTDL()));
-            List<Integer> geneList = (List<Integer>)pathwayDoc.get("gene_list");
-            nodeData.setGeneNumber(geneList == null? 0: geneList.size());
-
-            nodes.add(new Element(Element.Group.NODES, nodeData));
+            nodes.add(createNetworkNode(from, graph, indices[i]));
             // Nothing to do for the last pathway. We just want to add it into the network
             if (i == pathways.size() - 1)
                 break;
-            //build map of overlapping pathway stId to overlap information
-            Map<String, PathwayOverlap> stIdToOverlappingPathway = getStIdToOverlappingPathways(((List<Document>)pathwayDoc.get("overlapping_pathways")));
             for(int j = i+1; j<pathways.size(); j++) {
                 Pathway to = pathways.get(j);
-                if(!stIdToOverlappingPathway.containsKey(to.getStId()) || 
-                        stIdToOverlappingPathway.get(to.getStId()).getNumberOfSharedGenes() == 0) // No shared genes, no edges
+                int overlap = graph.findOverlap(indices[i], indices[j]);
+                if(overlap < 0 || graph.getSharedGenes(overlap) == 0) // No shared genes, no edges
                     continue;
-                EdgeData data = new EdgeData(from.getStId() + ":" +to.getStId(),
-                        stIdToOverlappingPathway.get(to.getStId()).getNumberOfSharedGenes(),
-                        stIdToOverlappingPathway.get(to.getStId()).getHypergeometricScore(),
-                        from.getStId(),
-                        to.getStId());
-                Element edge = new Element(Element.Group.EDGES, data);
-                edges.add(edge);
+                edges.add(createNetworkEdge(from.getStId(), to.getStId(), graph, overlap));
             }
         }
         // Two sections: first nodes and then edges. nodes is just a convenient variable here. Actually it
         // is the whole network.
         nodes.addAll(edges);
+        if (layout)
+            layoutNetwork(term, dataDescKeys, prd, nodes, () -> nodes);
         return nodes;
     }
 
-    private Map<String, PathwayOverlap> getStIdToOverlappingPathways(List<Document> docs) {
-        Map<String, PathwayOverlap> rtn = new HashMap<>();
+    /**
+     * Build the network of enriched pathways with limits applied while it is built. Nodes are the
+     * maxNodes pathways having the smallest p-values. Edges with hypergeometric scores above
+     * maxHypergeometricScore are dropped, and the remaining edges are taken in the order of their scores
+     * (smaller first, then more shared genes) as long as neither end has maxEdgesPerNode edges already.
+     * Unlike the unpruned network, an edge is kept only when both of its ends are nodes.
+     * @param term
+     * @param dataDescKeys
+     * @param prd
+     * @param maxNodes null for no limit
+     * @param maxEdgesPerNode null for no limit
+     * @param maxHypergeometricScore null for no limit
+     * @param layout true to attach coordinates from layoutNetwork() to nodes
+     * @return
+     */
+    public PathwayNetwork queryPrunedPathwayNetwork(String term,
+                                                   List<Integer> dataDescKeys,
+                                                   double prd,
+                                                   Integer maxNodes,
+                                                   Integer maxEdgesPerNode,
+                                                   Double maxHypergeometricScore,
+                                                   boolean layout) {
+        if (maxNodes != null && maxNodes < 1)
+            throw new BadRequestException("maxNodes must be positive: " + maxNodes);
+        if (maxEdgesPerNode != null && maxEdgesPerNode < 0)
+            throw new BadRequestException("maxEdgesPerNode cannot be negative: " + maxEdgesPerNode);
+        List<Pathway> pathways = queryNetworkPathways(term, dataDescKeys, prd);
+        PathwayOverlapGraph graph = getPathwayOverlapGraph();
+        // Pathways not in reactome_pathways are skipped as in the unpruned network
+        pathways = pathways.stream()
+                .filter(pathway -> graph.isLoaded(graph.getIndex(pathway.getStId())))
+                .collect(Collectors.toList());
+        // Marks for the enriched pathways and then for the kept ones only
+        boolean[] isNode = new boolean[graph.size()];
+        for (Pathway pathway : pathways)
+            isNode[graph.getIndex(pathway.getStId())] = true;
+        PathwayNetwork network = new PathwayNetwork();
+        network.setTotalNodes(pathways.size());
+        network.setTotalEdges(countNetworkEdges(graph, isNode));
+
+        List<Pathway> nodes = pathways;
+        if (maxNodes != null && maxNodes < pathways.size()) {
+            nodes = pathways.stream()
+                    .sorted(Comparator.comparing(Pathway::getpVal, Comparator.nullsLast(Comparator.naturalOrder())))
+                    .limit(maxNodes)
+                    .sorted((p1, p2) -> p1.getStId().compareTo(p2.getStId()))
+                    .collect(Collectors.toList());
+            Arrays.fill(isNode, false);
+            for (Pathway pathway : nodes)
+                isNode[graph.getIndex(pathway.getStId())] = true;
+        }
 
-        docs.forEach(doc -> {
-            String stId = doc.getString("stId");
-            rtn.put(stId, new PathwayOverlap(stId, doc.getDouble("hypergeometricScore"), doc.getInteger("numberOfSharedGenes")));
-        });
+        // Candidate edges as {from, position in the graph}, in the order of the unpruned network
+        List<int[]> candidates = new ArrayList<>();
+        for (Pathway pathway : nodes) {
+            int from = graph.getIndex(pathway.getStId());
+            for (int position = graph.getOverlapStart(from); position < graph.getOverlapEnd(from); position++) {
+                int to = graph.getNeighbor(position);
+                if (to <= from || !isNode[to] || graph.getSharedGenes(position) == 0)
+                    continue;
+                if (maxHypergeometricScore != null) {
+                    Double score = graph.getHypergeometricScore(position);
+                    if (score == null || score > maxHypergeometricScore)
+                        continue;
+                }
+                candidates.add(new int[] {from, position});
+            }
+        }
+        Set<Integer> kept = new HashSet<>();
+        if (maxEdgesPerNode == null)
+            candidates.forEach(candidate -> kept.add(candidate[1]));
+        else {
+            List<int[]> sorted = new ArrayList<>(candidates);
+            sorted.sort(Comparator.comparing((int[] candidate) -> graph.getHypergeometricScore(candidate[1]),
+                                             Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(candidate -> -graph.getSharedGenes(candidate[1])));
+            int[] degrees = new int[graph.size()];
+            for (int[] candidate : sorted) {
+                int from = candidate[0];
+                int to = graph.getNeighbor(candidate[1]);
+                if (degrees[from] >= maxEdgesPerNode || degrees[to] >= maxEdgesPerNode)
+                    continue;
+                degrees[from] ++;
+                degrees[to] ++;
+                kept.add(candidate[1]);
+            }
+        }
 
+        List<Element> elements = network.getElements();
+        List<Element> edges = new ArrayList<>();
+        for (Pathway pathway : nodes) {
+            int from = graph.getIndex(pathway.getStId());
+            elements.add(createNetworkNode(pathway, graph, from));
+            for (int position = graph.getOverlapStart(from); position < graph.getOverlapEnd(from); position++) {
+                if (kept.contains(position))
+                    edges.add(createNetworkEdge(pathway.getStId(), graph.getStId(graph.getNeighbor(position)), graph, position));
+            }
+        }
+        elements.addAll(edges);
+        network.setNodeNumber(nodes.size());
+        network.setEdgeNumber(edges.size());
+        if (layout)
+            layoutNetwork(term, dataDescKeys, prd, elements,
+                          () -> queryTermToSecondaryPathwaysNetworkWithEnrichment(term, dataDescKeys, prd, false));
+        return network;
+    }
+
+    /**
+     * Set x and y of network nodes. Coordinates are computed by NetworkLayout for the unpruned network
+     * so that pruned networks of the same query are drawn consistently with it. They are cached per
+     * gene with its DataDesc ids or PRD cutoff in the same way as enrichment results.
+     * @param term
+     * @param dataDescKeys
+     * @param prd
+     * @param elements nodes to be set
+     * @param fullNetwork the unpruned network, called only when the layout is not cached
+     */
+    private void layoutNetwork(String term,
+                               List<Integer> dataDescKeys,
+                               double prd,
+                               List<Element> elements,
+                               Supplier<List<Element>> fullNetwork) {
+        String gene = getGeneForTerm(term);
+        if (gene == null)
+            return; // The network is empty
+        EnrichmentKey key;
+        if (dataDescKeys == null || dataDescKeys.size() == 0 || dataDescKeys.contains(0))
+            key = new EnrichmentKey(gene, null, prd);
+        else
+            key = new EnrichmentKey(gene, getDataDescIdsForDigitalKeys(dataDescKeys), null);
+        WeightedLruCache<EnrichmentKey, Map<String, double[]>> cache = getNetworkLayoutCache();
+        Map<String, double[]> idToPosition = cache.get(key);
+        if (idToPosition == null) {
+            idToPosition = computeNetworkLayout(fullNetwork.get());
+            cache.put(key, idToPosition);
+        }
+        for (Element element : elements) {
+            if (element.getGroup() != Element.Group.NODES)
+                continue;
+            NodeData node = (NodeData) element.getData();
+            double[] position = idToPosition.get(node.getId());
+            if (position == null)
+                continue;
+            node.setX(position[0]);
+            node.setY(position[1]);
+        }
+    }
+
+    private Map<String, double[]> computeNetworkLayout(List<Element> network) {
+        long time1 = System.currentTimeMillis();
+        Map<String, Integer> idToIndex = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        for (Element element : network) {
+            if (element.getGroup() == Element.Group.NODES) {
+                idToIndex.put(element.getData().getId(), ids.size());
+                ids.add(element.getData().getId());
+            }
+        }
+        List<int[]> edges = new ArrayList<>();
+        for (Element element : network) {
+            if (element.getGroup() != Element.Group.EDGES)
+                continue;
+            EdgeData edge = (EdgeData) element.getData();
+            Integer source = idToIndex.get(edge.getSource());
+            Integer target = idToIndex.get(edge.getTarget());
+            if (source != null && target != null) // Edges to pathways not loaded are not drawn
+                edges.add(new int[] {source, target});
+        }
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            sources[i] = edges.get(i)[0];
+            targets[i] = edges.get(i)[1];
+        }
+        double[] positions = NetworkLayout.layout(ids.size(), sources, targets);
+        Map<String, double[]> rtn = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++)
+            rtn.put(ids.get(i), new double[] {positions[2 * i], positions[2 * i + 1]});
+        long time2 = System.currentTimeMillis();
+        logger.info("Laid out " + ids.size() + " nodes and " + edges.size() + " edges in " + (time2 - time1) + " ms.");
         return rtn;
     }
 
+    /**
+     * @return hit, miss and eviction counters of the network layout cache.
+     */
+    public Map<String, Number> getNetworkLayoutCacheStats() {
+        return getNetworkLayoutCache().getStats();
+    }
+
+    private WeightedLruCache<EnrichmentKey, Map<String, double[]>> getNetworkLayoutCache() {
+        WeightedLruCache<EnrichmentKey, Map<String, double[]>> cache = networkLayoutCache;
+        if (cache != null)
+            return cache;
+        synchronized (cacheLock) {
+            if (networkLayoutCache == null) {
+                long maxBytes = config == null ? 0 : config.getNetworkLayoutCacheMaxBytes();
+                networkLayoutCache = new WeightedLruCache<>(maxBytes, idToPosition -> {
+                    long size = 48;
+                    for (String id : idToPosition.keySet())
+                        size += 96 + 2L * id.length();
+                    return size;
+                });
+            }
+            return networkLayoutCache;
+        }
+    }
+
+    /**
+     * Count edges between marked pathways in the same way as the unpruned network.
+     */
+    private int countNetworkEdges(PathwayOverlapGraph graph, boolean[] isNode) {
+        int count = 0;
+        for (int from = 0; from < isNode.length; from++) {
+            if (!isNode[from])
+                continue;
+            for (int position = graph.getOverlapStart(from); position < graph.getOverlapEnd(from); position++) {
+                int to = graph.getNeighbor(position);
+                if (to > from && isNode[to] && graph.getSharedGenes(position) > 0)
+                    count ++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the reactome_pathways collection in memory, which is loaded at the first call.
+     * @return
+     */
+    public PathwayOverlapGraph getPathwayOverlapGraph() {
+        PathwayOverlapGraph graph = pathwayOverlapGraph;
+        if (graph != null)
+            return graph;
+        synchronized (pathwayOverlapGraphLock) {
+            if (pathwayOverlapGraph == null)
+                pathwayOverlapGraph = PathwayOverlapGraph.load(database.getCollection(REACTOME_PATHWAYS_CACHE_COL_ID));
+            return pathwayOverlapGraph;
+        }
+    }
+
     public Map<String, Double> queryCombinedScoreGenesForTerm(String term) {
         term = getGeneForTerm(term);
         if(term == null) return new HashMap<>();
 
-        Document relDoc = getRelationshipDocForGene(term);
-        if(relDoc == null || relDoc.get(COMBINED_SCORE) == null)
+        CombinedScores combinedScores = relationshipRepository.findCombinedScores(term);
+        if(combinedScores == null)
             return new HashMap<>(); //return empty map if no document exists
 
-        return getCombinedScoresWithoutCutoff((Document)relDoc.get(COMBINED_SCORE));
+        return getCombinedScoresWithoutCutoff(combinedScores);
+    }
+
+    /**
+     * Query a page of the interactors of a term having the highest combined scores. Only the requested
+     * page is decoded from the score-sorted storage.
+     * @param term gene or UniProt
+     * @param offset
+     * @param limit
+     * @param minScore interactors having scores not greater than this are excluded. null for all.
+     * @return
+     */
+    public CombinedScorePage queryTopCombinedScoreGenesForTerm(String term, int offset, int limit, Double minScore) {
+        if(offset < 0 || limit < 0)
+            throw new BadRequestException("offset and limit must not be negative.");
+        if(limit > MAX_COMBINED_SCORE_PAGE_SIZE)
+            throw new BadRequestException("limit must not be greater than " + MAX_COMBINED_SCORE_PAGE_SIZE + ".");
+        CombinedScorePage rtn = new CombinedScorePage();
+        rtn.setTerm(term);
+        rtn.setOffset(offset);
+        String gene = getGeneForTerm(term);
+        if(gene == null) return rtn;
+
+        Document relDoc = relationshipRepository.findGene(gene, Collections.singletonList(COMBINED_SCORE));
+        Object value = relDoc == null ? null : relDoc.get(COMBINED_SCORE);
+        if(value == null) return rtn;
+
+        int total = CombinedScores.countAbove(value, minScore == null ? Double.NEGATIVE_INFINITY : minScore);
+        rtn.setTotal(total);
+        CombinedScores page = CombinedScores.slice(value, offset, (int) Math.min(total, (long) offset + limit));
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
+        for(int i = 0; i < page.size(); i++)
+            rtn.getInteractors().add(new InteractorScore(symbolTable.getSymbol(page.getIndex(i)), page.getScoreAsDouble(i)));
+        return rtn;
+    }
+
+    /**
+     * Get the numbers of combined score interactors of a term above fixed cutoffs so that the client
+     * doesn't need to query interactors for each cutoff. The precomputed histogram is used if available.
+     * @param term gene or UniProt
+     * @return
+     */
+    public PrdHistogram queryPrdHistogramForTerm(String term) {
+        String gene = getGeneForTerm(term);
+        if(gene == null) throw new ResourceNotFoundException("Could not find term: " + term);
+        Document histogramDoc = database.getCollection(PRD_HISTOGRAMS_COL_ID).find(Filters.eq("_id", gene)).first();
+        if(histogramDoc == null) {
+            // Not precomputed yet
+            Document relDoc = relationshipRepository.findGene(gene, Collections.singletonList(COMBINED_SCORE));
+            histogramDoc = createPrdHistogramDoc(gene, relDoc == null ? null : relDoc.get(COMBINED_SCORE));
+        }
+        PrdHistogram rtn = new PrdHistogram();
+        rtn.setGene(gene);
+        rtn.setCutoffs((List<Double>) histogramDoc.get("cutoffs"));
+        rtn.setCounts((List<Integer>) histogramDoc.get("counts"));
+        return rtn;
+    }
+
+    /**
+     * Regenerate the prd_histograms collection from combined scores. This should be run after combined
+     * scores are inserted.
+     */
+    public void regeneratePrdHistograms() {
+        MongoCollection<Document> collection = database.getCollection(PRD_HISTOGRAMS_COL_ID);
+        collection.drop();
+        List<Document> docs = new ArrayList<>();
+        int total = 0;
+        MongoCursor<Document> cursor = relationshipRepository.iterateAll(Collections.singletonList(COMBINED_SCORE));
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                Object value = geneDoc.get(COMBINED_SCORE);
+                if (value == null)
+                    continue;
+                docs.add(createPrdHistogramDoc(geneDoc.getString("_id"), value));
+                if (docs.size() == 1000) {
+                    collection.insertMany(docs);
+                    total += docs.size();
+                    docs.clear();
+                }
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        if (docs.size() > 0)
+            collection.insertMany(docs);
+        total += docs.size();
+        logger.info("Generated PRD histograms for " + total + " genes.");
+    }
+
+    private Document createPrdHistogramDoc(String gene, Object combinedScores) {
+        List<Double> cutoffs = new ArrayList<>(PRD_HISTOGRAM_BUCKETS);
+        List<Integer> counts = new ArrayList<>(PRD_HISTOGRAM_BUCKETS);
+        for (int i = 0; i < PRD_HISTOGRAM_BUCKETS; i++) {
+            double cutoff = (double) i / PRD_HISTOGRAM_BUCKETS;
+            cutoffs.add(cutoff);
+            // The same cutoff as getCombinedScoresWithCutoff() via binary search
+            counts.add(combinedScores == null ? 0 : CombinedScores.countAbove(combinedScores, cutoff));
+        }
+        return new Document("_id", gene).append("cutoffs", cutoffs).append("counts", counts);
+    }
+
+    /**
+     * Precompute enriched pathways of the combined score interactors of all genes in the gene index at
+     * the passed PRD cutoffs, and store them in the enrichment_cache collection, which is used by
+     * queryEnrichedPathwaysForCombinedScore(). Genes are enriched in parallel by all processors.
+     * This should be run after combined scores are inserted or pathways are regenerated, both of which drop
+     * results precomputed before. The cutoffs are listed in their own document so that queries at other
+     * cutoffs don't go to the collection and combined score updates can delete the results of their genes.
+     * @param prdCutoffs
+     * @return the number of stored results.
+     */
+    public int precomputeEnrichment(List<Double> prdCutoffs) {
+        long time1 = System.currentTimeMillis();
+        MongoCollection<Document> collection = database.getCollection(ENRICHMENT_CACHE_COL_ID);
+        collection.drop();
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
+        // Load shared data before threads use it
+        pathwayService.getPathwayStIdToPathway(getUniProtToGene());
+        getEnrichmentEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<List<Document>>> futures = new ArrayList<>();
+        int total = 0;
+        MongoCursor<Document> cursor = relationshipRepository.iterateAll(Collections.singletonList(COMBINED_SCORE));
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                String gene = geneDoc.getString("_id");
+                if (symbolTable.getIndex(gene) < 0 || geneDoc.get(COMBINED_SCORE) == null)
+                    continue;
+                CombinedScores combinedScores = CombinedScores.decode(geneDoc.get(COMBINED_SCORE));
+                futures.add(executor.submit(() -> createEnrichmentDocs(gene, combinedScores, prdCutoffs)));
+                if (futures.size() == 1000)
+                    total += insertEnrichmentDocs(collection, futures);
+            }
+            total += insertEnrichmentDocs(collection, futures);
+        }
+        finally {
+            cursor.close();
+            executor.shutdownNow();
+        }
+        List<Double> cutoffs = new ArrayList<>();
+        for (Double prdCutoff : new LinkedHashSet<>(prdCutoffs))
+            cutoffs.add((double) prdCutoff.floatValue());
+        collection.insertOne(new Document("_id", ENRICHMENT_CUTOFFS_ID).append("cutoffs", cutoffs));
+        precomputedCutoffs = null;
+        long time2 = System.currentTimeMillis();
+        logger.info("Precomputed " + total + " enrichment results in " + (time2 - time1) + " ms.");
+        return total;
+    }
+
+    private int insertEnrichmentDocs(MongoCollection<Document> collection, List<Future<List<Document>>> futures) {
+        List<Document> docs = new ArrayList<>();
+        try {
+            for (Future<List<Document>> future : futures)
+                docs.addAll(future.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while precomputing enrichment.", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot precompute enrichment: " + e.getCause().getMessage(), e.getCause());
+        }
+        futures.clear();
+        if (docs.size() > 0)
+            collection.insertMany(docs);
+        return docs.size();
+    }
+
+    private List<Document> createEnrichmentDocs(String gene, CombinedScores combinedScores, List<Double> prdCutoffs) {
+        List<Document> rtn = new ArrayList<>();
+        for (Double prdCutoff : prdCutoffs) {
+            Collection<String> interactors = getCombinedScoresWithCutoff(combinedScores, prdCutoff);
+            List<Pathway> pathways = interactors.size() == 0 ? new ArrayList<>() : getEnrichedPathways(interactors, gene);
+            List<String> stIds = new ArrayList<>(pathways.size());
+            List<Double> pValues = new ArrayList<>(pathways.size());
+            List<Double> fdrs = new ArrayList<>(pathways.size());
+            List<Integer> numGenes = new ArrayList<>(pathways.size());
+            for (Pathway pathway : pathways) {
+                stIds.add(pathway.getStId());
+                pValues.add(pathway.getpVal());
+                fdrs.add(pathway.getFdr());
+                numGenes.add(pathway.getNumGenes());
+            }
+            rtn.add(new Document("_id", getEnrichmentCacheId(gene, prdCutoff))
+                    .append("stIds", stIds)
+                    .append("pValues", pValues)
+                    .append("fdrs", fdrs)
+                    .append("numGenes", numGenes));
+        }
+        return rtn;
+    }
+
+    /**
+     * The cutoff is keyed as the float it is compared as so that equivalent cutoffs find the same result.
+     */
+    private String getEnrichmentCacheId(String gene, Double prdCutoff) {
+        return gene + ":" + prdCutoff.floatValue();
+    }
+
+    /**
+     * @return the cutoffs listed in enrichment_cache, which is loaded at the first call.
+     */
+    private Set<Float> getPrecomputedCutoffs() {
+        Set<Float> cutoffs = precomputedCutoffs;
+        if (cutoffs == null) {
+            cutoffs = loadPrecomputedCutoffs();
+            precomputedCutoffs = cutoffs;
+        }
+        return cutoffs;
+    }
+
+    /**
+     * @return an empty set if nothing is precomputed, including results precomputed without the list
+     * of cutoffs, which are not used.
+     */
+    private Set<Float> loadPrecomputedCutoffs() {
+        Document doc = database.getCollection(ENRICHMENT_CACHE_COL_ID)
+                .find(Filters.eq("_id", ENRICHMENT_CUTOFFS_ID))
+                .first();
+        Set<Float> rtn = new HashSet<>();
+        if (doc == null)
+            return rtn;
+        for (Object cutoff : (List<?>) doc.get("cutoffs"))
+            rtn.add(((Number) cutoff).floatValue());
+        return rtn;
+    }
+
+    /**
+     * Delete precomputed results of the passed genes, e.g. after their combined scores are updated.
+     * @param genes
+     */
+    private void deletePrecomputedEnrichment(Collection<String> genes) {
+        // Not the cached set: the results may be precomputed by another process
+        Set<Float> cutoffs = loadPrecomputedCutoffs();
+        if (cutoffs.isEmpty() || genes.isEmpty())
+            return;
+        List<String> ids = new ArrayList<>(genes.size() * cutoffs.size());
+        for (String gene : genes) {
+            for (Float cutoff : cutoffs)
+                ids.add(getEnrichmentCacheId(gene, cutoff.doubleValue()));
+        }
+        database.getCollection(ENRICHMENT_CACHE_COL_ID).deleteMany(Filters.in("_id", ids));
+    }
+
+    /**
+     * @param gene
+     * @param prdCutoff
+     * @return null if there is no precomputed result or it refers to pathways not loaded.
+     */
+    private List<Pathway> findPrecomputedEnrichment(String gene, Double prdCutoff) {
+        if (!getPrecomputedCutoffs().contains(prdCutoff.floatValue()))
+            return null; // Not precomputed. Don't go to the database.
+        Document doc = database.getCollection(ENRICHMENT_CACHE_COL_ID)
+                .find(Filters.eq("_id", getEnrichmentCacheId(gene, prdCutoff)))
+                .first();
+        if (doc == null)
+            return null;
+        Map<String, Pathway> pathwayStIdToPathway = pathwayService.getPathwayStIdToPathway(this.getUniProtToGene());
+        List<String> stIds = (List<String>) doc.get("stIds");
+        List<Double> pValues = (List<Double>) doc.get("pValues");
+        List<Double> fdrs = (List<Double>) doc.get("fdrs");
+        List<Integer> numGenes = (List<Integer>) doc.get("numGenes");
+        List<Pathway> rtn = new ArrayList<>(stIds.size());
+        for (int i = 0; i < stIds.size(); i++) {
+            Pathway loaded = pathwayStIdToPathway.get(stIds.get(i));
+            if (loaded == null)
+                return null; // Precomputed with other pathways
+            Pathway pathway = new Pathway(stIds.get(i),
+                    loaded.getName(),
+                    fdrs.get(i),
+                    pValues.get(i),
+                    loaded.isBottomLevel());
+            pathway.setNumGenes(numGenes.get(i));
+            rtn.add(pathway);
+        }
+        return rtn;
     }
 
     public List<Pathway> queryEnrichedPathwaysForCombinedScore(String term, Double prdCutoff) {
@@ -667,26 +1958,32 @@ public class PairwiseService {
         term = getGeneForTerm(term);
         if(term == null) return new ArrayList<>();
 
-        Document relDoc = getRelationshipDocForGene(term);
-        if(relDoc == null || relDoc.get(COMBINED_SCORE) == null) return null; //return null if no relationship doc for term or no combined score
+        String gene = term;
+        return getCachedEnrichment(new EnrichmentKey(gene, null, prdCutoff), () -> {
+            if(prdCutoff != null) {
+                List<Pathway> precomputed = findPrecomputedEnrichment(gene, prdCutoff);
+                if(precomputed != null) return precomputed;
+            }
+            CombinedScores combinedScores = relationshipRepository.findCombinedScores(gene);
+            if(combinedScores == null) return null; //return null if no relationship doc for term or no combined score
 
-        //Get combined scores from document. Loop over each row and add index (as gene)  to interactors if prd value less than passed in cutoff
-        Collection<String> interactors = getCombinedScoresWithCutoff((Document)relDoc.get(COMBINED_SCORE), prdCutoff);
+            //Get combined scores from document. Loop over each row and add index (as gene)  to interactors if prd value less than passed in cutoff
+            Collection<String> interactors = getCombinedScoresWithCutoff(combinedScores, prdCutoff);
 
-        if(interactors.size() == 0) //want to return empty array instead of enrich if no interactors under given prd.
-            return new ArrayList<>();
+            if(interactors.size() == 0) //want to return empty array instead of enrich if no interactors under given prd.
+                return new ArrayList<>();
 
-        return getEnrichedPathways(interactors, term);
+            return getEnrichedPathways(interactors, gene);
+        });
     }
 
-    private Map<String, Double> getCombinedScoresWithoutCutoff(Document combinedScores) {
+    private Map<String, Double> getCombinedScoresWithoutCutoff(CombinedScores combinedScores) {
         if(combinedScores == null || combinedScores.size() == 0) return new HashMap<>();
-        Map<Integer, String> indexToGene = this.getIndexToGene();
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
         Map<String, Double> rtn = new HashMap<>();
 
-        combinedScores.forEach((index, prd) -> {
-            rtn.put(indexToGene.get(Integer.parseInt(index)), (Double)prd);
-        });
+        for(int i = 0; i < combinedScores.size(); i++)
+            rtn.put(symbolTable.getSymbol(combinedScores.getIndex(i)), combinedScores.getScoreAsDouble(i));
 
         return rtn;
     }
@@ -697,23 +1994,110 @@ public class PairwiseService {
      * @param prdCutoff
      * @return
      */
-    private Collection<String> getCombinedScoresWithCutoff(Document combinedScores, Double prdCutoff){
+    private Collection<String> getCombinedScoresWithCutoff(CombinedScores combinedScores, Double prdCutoff){
         if(combinedScores == null || combinedScores.size() == 0) return new ArrayList<>();
-        Map<Integer, String> indexToGene = this.getIndexToGene();
-        Collection<String> rtn = new ArrayList<>();
-        combinedScores.forEach((index, prd) -> {
-            if((Double)prd == null) return; //just in case prd isn't parse-able to avoid error on next line
-            if((Double)prd > prdCutoff)
-                rtn.add(indexToGene.get(Integer.parseInt(index)));
-        });
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
+        //scores are sorted so that interactors above the cutoff are a prefix
+        int[] indices = combinedScores.getIndicesAbove(prdCutoff);
+        Collection<String> rtn = new ArrayList<>(indices.length);
+        for(int index : indices)
+            rtn.add(symbolTable.getSymbol(index));
         return rtn;
     }
 
-    public List<Pathway> getEnrichedPathways(Collection<String> interactors, String gene){
-        Map<String, Pathway> pathwayStIdToPathway = pathwayService.getPathwayStIdToPathway(this.getUniProtToGene());
+    /**
+     * Enrich the combined score interactors of a term at multiple PRD cutoffs. Interactors are walked
+     * once in the order of descending scores, and pathway hits are updated as the cutoff drops.
+     * @param term
+     * @param prdCutoffs
+     * @return results in the order of the passed cutoffs, or null if there is no combined score for the term.
+     */
+    public List<PrdEnrichment> queryEnrichedPathwaysForCombinedScoreCutoffs(String term, List<Double> prdCutoffs) {
+        if(prdCutoffs.size() > MAX_PRD_SWEEP_CUTOFFS)
+            throw new BadRequestException("Too many cutoffs: " + prdCutoffs.size() + " > " + MAX_PRD_SWEEP_CUTOFFS);
+        if(prdCutoffs.contains(null))
+            throw new BadRequestException("Cutoffs cannot be null.");
+        String gene = getGeneForTerm(term);
+        if(gene == null) return new ArrayList<>();
 
+        CombinedScores combinedScores = relationshipRepository.findCombinedScores(gene);
+        if(combinedScores == null) return null;
+
+        //higher cutoffs select shorter prefixes of the sorted interactors
+        List<Double> sortedCutoffs = new ArrayList<>(prdCutoffs);
+        sortedCutoffs.sort(Collections.reverseOrder());
+        int[] prefixLengths = new int[sortedCutoffs.size()];
+        for(int i = 0; i < prefixLengths.length; i++)
+            prefixLengths[i] = combinedScores.countAbove(sortedCutoffs.get(i));
+        int total = prefixLengths.length == 0 ? 0 : prefixLengths[prefixLengths.length - 1];
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
+        List<String> interactors = new ArrayList<>(total);
+        for(int i = 0; i < total; i++)
+            interactors.add(symbolTable.getSymbol(combinedScores.getIndex(i)));
+
+        List<List<GeneSetAnnotation>> annotations;
+        try {
+            annotations = getEnrichmentEngine().annotatePrefixes(interactors, prefixLengths);
+        } catch(Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new InternalServerError("Could not annotate interactors for " + gene);
+        }
+        Map<Double, PrdEnrichment> cutoffToEnrichment = new HashMap<>();
+        for(int i = 0; i < prefixLengths.length; i++) {
+            cutoffToEnrichment.put(sortedCutoffs.get(i),
+                    new PrdEnrichment(sortedCutoffs.get(i), prefixLengths[i], convertAnnotations(annotations.get(i))));
+        }
+        return prdCutoffs.stream().map(cutoffToEnrichment::get).collect(Collectors.toList());
+    }
+
+    /**
+     * Enrich a user's gene set against the cached Reactome pathways and write the result as JSON.
+     * Terms are resolved to genes in bulk, and pathways are written one at a time after the enrichment.
+     * The layout is:
+     * {"termNumber": n, "geneNumber": n, "unmappedTerms": [...], "pathways": [Pathway, ...]}
+     * @param terms gene symbols and/or UniProt accessions
+     * @param os not closed
+     * @throws IOException
+     */
+    public void streamGeneSetEnrichment(List<String> terms, OutputStream os) throws IOException {
+        if(terms.size() > MAX_GENE_SET_SIZE)
+            throw new BadRequestException("Too many terms: " + terms.size() + " > " + MAX_GENE_SET_SIZE);
+        TermResolver resolver = getTermResolver();
+        // A gene listed as a symbol and a UniProt is counted once
+        Set<String> genes = new LinkedHashSet<>();
+        List<String> unmapped = new ArrayList<>();
+        for(String term : terms) {
+            String gene = resolver.resolveGene(term);
+            if(gene == null) unmapped.add(term);
+            else genes.add(gene);
+        }
+        List<Pathway> pathways = genes.isEmpty() ? new ArrayList<>() : getEnrichedPathways(genes, "the gene set");
+
+        JsonGenerator generator = new ObjectMapper().getFactory().createGenerator(os);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.writeStartObject();
+        generator.writeNumberField("termNumber", terms.size());
+        generator.writeNumberField("geneNumber", genes.size());
+        generator.writeArrayFieldStart("unmappedTerms");
+        for(String term : unmapped)
+            generator.writeString(term);
+        generator.writeEndArray();
+        generator.writeArrayFieldStart("pathways");
+        for(Pathway pathway : pathways)
+            generator.writeObject(pathway);
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.close();
+    }
+
+    public List<Pathway> getEnrichedPathways(Collection<String> interactors, String gene){
         //get enrichment analysis results
         List<GeneSetAnnotation> annotations = performEnrichment(interactors, gene);
+        return convertAnnotations(annotations);
+    }
+
+    private List<Pathway> convertAnnotations(List<GeneSetAnnotation> annotations) {
+        Map<String, Pathway> pathwayStIdToPathway = pathwayService.getPathwayStIdToPathway(this.getUniProtToGene());
 
         //convert enrichment analysis results into a list of Pathway objects
         List<Pathway> rtnPathways = new ArrayList<>();
@@ -732,11 +2116,9 @@ public class PairwiseService {
     }
 
     private List<GeneSetAnnotation> performEnrichment(Collection<String> interactors, String gene){
-        if(annotator == null) loadPathwayBasedAnnotator();
         List<GeneSetAnnotation> annotations;
         try {
-            annotations = this.annotator.annotateGeneSet(interactors, 
-                    pathwayService.getGeneToPathwayStId(uniprotToGene));
+            annotations = getEnrichmentEngine().annotate(interactors);
         } catch(Exception e) {
             logger.error(e.getMessage(), e);
             throw new InternalServerError("Could not annotate interactors for " + gene);
@@ -744,8 +2126,31 @@ public class PairwiseService {
         return annotations;
     }
 
-    private void loadPathwayBasedAnnotator() {
-        this.annotator = new PathwayBasedAnnotator();
+    /**
+     * Get the engine for pathway enrichment, which is built from the gene to pathway mapping at the
+     * first call.
+     * @return
+     */
+    public EnrichmentEngine getEnrichmentEngine() {
+        EnrichmentEngine engine = enrichmentEngine;
+        if (engine != null)
+            return engine;
+        // PathwayService loads pathways, which may go to MySQL, under its own lock
+        Map<String, Set<String>> geneToPathways = pathwayService.getGeneToPathwayStId(getUniProtToGene());
+        if (geneToPathways.isEmpty()) {
+            // Pathways cannot be loaded. Don't keep an empty engine so that the next call tries again.
+            return new EnrichmentEngine(geneToPathways);
+        }
+        synchronized (enrichmentEngineLock) {
+            if (enrichmentEngine == null) {
+                long time1 = System.currentTimeMillis();
+                enrichmentEngine = new EnrichmentEngine(geneToPathways);
+                long time2 = System.currentTimeMillis();
+                logger.info("Built the enrichment engine for " + enrichmentEngine.getPathwayCount() +
+                        " pathways in " + (time2 - time1) + " ms.");
+            }
+            return enrichmentEngine;
+        }
     }
 
     public Pathway queryPathwayToGeneRelationships(String stId) {
@@ -780,8 +2185,7 @@ public class PairwiseService {
     public String queryFeaturesForTermAndInteractors(String term, List<String>interactors) {
 
         //ensure term is or can be a gene name. 404 if not found
-        boolean isGene = this.getGeneToUniProt().containsKey(term);
-        String gene = isGene ? term : this.getUniProtToGene().get(term);
+        String gene = getTermResolver().resolveGene(term);
         if(gene == null) throw new ResourceNotFoundException("Could not find term: " + term);
 
         Document geneDoc = this.getRelationshipDocForGene(gene);
@@ -790,8 +2194,10 @@ public class PairwiseService {
         //get list of Data Description ids
         List<String> dataDescriptions = this.getDataDescriptions().stream().sorted().collect(Collectors.toList());
 
-        Map<String,Integer> geneToIndex = this.getIndexToGene().entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
-        Document combinedScoreDoc = (Document)geneDoc.get(COMBINED_SCORE);
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
+        CombinedScores combinedScores = CombinedScores.decode(geneDoc.get(COMBINED_SCORE));
+        // Looked up once per interactor
+        Map<Integer, Double> indexToScore = combinedScores == null ? null : combinedScores.toScoreMap();
 
         //Make return String
         StringBuilder rtn = new StringBuilder();
@@ -803,10 +2209,11 @@ public class PairwiseService {
 
         //append row for each interactor
         interactors.forEach(interactor -> {
-            int index = geneToIndex.get(interactor);
+            int index = symbolTable.getIndex(interactor);
+            if(index < 0) throw new ResourceNotFoundException("Could not find interactor: " + interactor);
             rtn.append(term+","+interactor+",")
             .append(this.getReactomeAnnotatedGenes().contains(interactor) ? "1,":"0,")
-            .append(combinedScoreDoc.getDouble(index+""));
+            .append(indexToScore == null ? null : indexToScore.get(index));
             dataDescriptions.forEach(desc -> {
                 rtn.append(",");
                 Document doc = (Document) geneDoc.get(desc);
@@ -814,11 +2221,11 @@ public class PairwiseService {
                     rtn.append("0");
                     return;
                 }
-                if(doc.containsKey("pos") && ((List<Integer>)doc.get("pos")).contains(index)) {
+                if(RelationshipCodec.contains(doc.get("pos"), index)) {
                     rtn.append("1");
                     return;
                 }
-                if(doc.containsKey("neg") && ((List<Integer>)doc.get("neg")).contains(index)) {
+                if(RelationshipCodec.contains(doc.get("neg"), index)) {
                     rtn.append("-1");
                     return;
                 }
@@ -864,10 +2271,10 @@ public class PairwiseService {
         List<DataDesc> rtn = new ArrayList<>();
 
         MongoCollection<Document> collection = database.getCollection(DATA_DESCRIPTIONS_COL_ID);
-        Document relDoc = this.getRelationshipDocForGene(gene);
-        if(relDoc == null) this.throwDocumentNotFound(term);
+        Set<String> keys = relationshipRepository.findKeys(gene);
+        if(keys == null) this.throwDocumentNotFound(term);
 
-        relDoc.keySet().forEach(key -> {
+        keys.forEach(key -> {
             if(!key.contains("|"))
                 return;
             Document dataDescDoc = collection.find(Filters.eq("_id", key)).first();
@@ -911,12 +2318,7 @@ public class PairwiseService {
      * @return
      */
     public String getGeneForTerm(String term) {
-        Map<String, String> uniprotToGene = this.getUniProtToGene();
-        if(uniprotToGene.values().contains(term))
-            return term;
-        else if(uniprotToGene.containsKey(term))
-            return uniprotToGene.get(term);
-        else return null;
+        return getTermResolver().resolveGene(term);
     }
 
     /**
@@ -1020,6 +2422,11 @@ public class PairwiseService {
             rtn.put(gene, nextIndex);
             nextIndex ++;
         }
+        if (toBePersisted.size() > 0 && collectionName.equals(GENE_INDEX_COL_ID)) {
+            synchronized (geneSymbolTableLock) {
+                geneSymbolTable = null; // Force to reload
+            }
+        }
         return rtn;
     }
 
@@ -1069,19 +2476,104 @@ public class PairwiseService {
             logger.info("Nothing to be inserted for " + rel.getGene() + " in " + rel.getDataDesc().getId());
             return; 
         }
-        MongoCollection<Document> collection = database.getCollection(RELATIONSHIP_COL_ID);
-        ensureCollectionDoc(collection, rel.getGene());
-        // Need to push the values via a Document
+        relationshipRepository.ensureGene(rel.getGene());
+        // Need to push the values via a Document. Indices are stored in the compact binary format.
         Document relDoc = new Document();
-        if (rel.getPos() != null && rel.getPos().size() > 0) 
-            relDoc.append("pos", rel.getPos());
-        if (rel.getNeg() != null && rel.getNeg().size() > 0)
-            relDoc.append("neg", rel.getNeg());
-        collection.updateOne(Filters.eq("_id", rel.getGene()),
-                Updates.set(rel.getDataDesc().getId(), relDoc));
+        // Numbers are stored too so that numberOnly queries don't need to fetch the lists
+        if (rel.getPos() != null && rel.getPos().size() > 0) {
+            Binary pos = RelationshipCodec.encode(rel.getPos());
+            relDoc.append("pos", pos).append("posNum", RelationshipCodec.size(pos));
+        }
+        if (rel.getNeg() != null && rel.getNeg().size() > 0) {
+            Binary neg = RelationshipCodec.encode(rel.getNeg());
+            relDoc.append("neg", neg).append("negNum", RelationshipCodec.size(neg));
+        }
+        relationshipRepository.updateGene(rel.getGene(), Updates.set(rel.getDataDesc().getId(), relDoc));
+        invalidateEnrichment(rel.getGene());
         logger.debug("Insert: " + rel.getDataDesc().getId() + " for " + rel.getGene() + ".");
     }
 
+    /**
+     * Rewrite pos and neg lists stored as BSON arrays of Integers in the relationships collection
+     * into the compact binary format defined in RelationshipCodec, and add posNum and negNum for
+     * numberOnly queries. Documents that have been converted already are skipped so that this method
+     * can be re-run safely.
+     * @return the number of updated documents
+     */
+    public int migrateRelationshipEncoding() {
+        int total = 0;
+        int updated = 0;
+        MongoCursor<Document> cursor = relationshipRepository.iterateAll();
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                total ++;
+                List<Bson> updates = new ArrayList<>();
+                for (String key : geneDoc.keySet()) {
+                    if (key.equals("_id") || key.equals(COMBINED_SCORE))
+                        continue;
+                    Object value = geneDoc.get(key);
+                    if (!(value instanceof Document))
+                        continue;
+                    Document relDoc = (Document) value;
+                    for (String field : new String[]{"pos", "neg"}) {
+                        Object indices = relDoc.get(field);
+                        if (indices == null)
+                            continue;
+                        if (!RelationshipCodec.isEncoded(indices)) {
+                            indices = RelationshipCodec.encode(RelationshipCodec.decode(indices));
+                            updates.add(Updates.set(key + "." + field, indices));
+                        }
+                        else if (relDoc.get(field + "Num") != null)
+                            continue;
+                        updates.add(Updates.set(key + "." + field + "Num", RelationshipCodec.size(indices)));
+                    }
+                }
+                if (updates.size() == 0)
+                    continue;
+                relationshipRepository.updateGene(geneDoc.getString("_id"), Updates.combine(updates));
+                updated ++;
+                if (updated % 1000 == 0)
+                    logger.info("Migrated " + updated + " of " + total + " checked documents...");
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        logger.info("Migration done: " + updated + " of " + total + " documents were updated.");
+        return updated;
+    }
+
+    /**
+     * Rewrite combined_score sub-documents keyed by gene indices into the score-sorted binary format
+     * defined in CombinedScores. Converted documents are skipped so that this method can be re-run safely.
+     * @return the number of updated documents
+     */
+    public int migrateCombinedScores() {
+        int total = 0;
+        int updated = 0;
+        MongoCursor<Document> cursor = relationshipRepository.iterateAll(Collections.singletonList(COMBINED_SCORE));
+        try {
+            while (cursor.hasNext()) {
+                Document geneDoc = cursor.next();
+                total ++;
+                Object value = geneDoc.get(COMBINED_SCORE);
+                if (value == null || CombinedScores.isEncoded(value))
+                    continue;
+                relationshipRepository.updateGene(geneDoc.getString("_id"),
+                                                  Updates.set(COMBINED_SCORE, CombinedScores.decode(value).encode()));
+                updated ++;
+                if (updated % 1000 == 0)
+                    logger.info("Migrated " + updated + " of " + total + " checked documents...");
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        logger.info("Migration done: " + updated + " of " + total + " documents were updated.");
+        return updated;
+    }
+
     //    public void insertPathwayRelationships(Map<String, List<Integer>> pathwayRelationships) {
     //    	logger.info("Inserting pathway relationships for " + pathwayRelationships.keySet().size() + " pathways.");
     //    	MongoCollection<Document> collection = database.getCollection(PATHWAYS_COL_ID);
@@ -1093,8 +2585,12 @@ public class PairwiseService {
     //    }
 
     public void clearCombinedScores() {
-        MongoCollection<Document> collection =  database.getCollection(RELATIONSHIP_COL_ID);
-        collection.updateMany(new BasicDBObject(), Updates.unset(COMBINED_SCORE));
+        relationshipRepository.unsetAll(COMBINED_SCORE);
+        // Precomputed from the removed scores
+        database.getCollection(ENRICHMENT_CACHE_COL_ID).drop();
+        precomputedCutoffs = null;
+        getEnrichmentCache().invalidateAll();
+        getNetworkLayoutCache().invalidateAll();
     }
 
     /**
@@ -1103,17 +2599,26 @@ public class PairwiseService {
     public void insertCombinedScore(Collection<GeneCombinedScore> geneCombinedScores) {
 
 
-        Map<String, Integer> geneToIndex = getIndexToGene().entrySet().stream().collect(Collectors.toMap(Entry::getValue, Entry::getKey));
-        MongoCollection<Document> collection = database.getCollection(RELATIONSHIP_COL_ID);
-
+        GeneSymbolTable symbolTable = getGeneSymbolTable();
+        List<String> genes = new ArrayList<>(geneCombinedScores.size());
         geneCombinedScores.forEach(obj -> {
-            ensureCollectionDoc(collection, obj.getGene());
-            Document combinedScoresDoc = new Document();
+            genes.add(obj.getGene());
+            relationshipRepository.ensureGene(obj.getGene());
+            Map<Integer, Double> indexToScore = new HashMap<>();
             obj.getInteractorToScore().forEach((gene,prd) -> {
-                combinedScoresDoc.append(geneToIndex.get(gene)+"", prd);
+                int index = symbolTable.getIndex(gene);
+                if (index < 0) {
+                    logger.warn(gene + " is not in the gene index and its combined score is not inserted.");
+                    return;
+                }
+                indexToScore.put(index, prd);
             });
-            collection.updateOne(Filters.eq("_id", obj.getGene()), Updates.set(COMBINED_SCORE, combinedScoresDoc));
+            // Stored sorted by scores for cutoff queries
+            relationshipRepository.updateGene(obj.getGene(), Updates.set(COMBINED_SCORE, CombinedScores.create(indexToScore).encode()));
+            invalidateEnrichment(obj.getGene());
         });
+        // Precomputed from the replaced scores
+        deletePrecomputedEnrichment(genes);
     }
 
     //    /**
@@ -1137,11 +2642,27 @@ public class PairwiseService {
     //    	
     //    }
 
+    /**
+     * Get the content of the GENE_INDEX collection, which is loaded once and shared.
+     * @return
+     */
+    public GeneSymbolTable getGeneSymbolTable() {
+        GeneSymbolTable table = geneSymbolTable;
+        if (table != null)
+            return table;
+        synchronized (geneSymbolTableLock) {
+            if (geneSymbolTable == null)
+                geneSymbolTable = GeneSymbolTable.fromIndexDocument(database.getCollection(GENE_INDEX_COL_ID).find().first());
+            return geneSymbolTable;
+        }
+    }
+
+    /**
+     * A boxed copy of getGeneSymbolTable(). Use getGeneSymbolTable() for lookups.
+     * @return
+     */
     public Map<Integer, String> getIndexToGene() {
-        if (indexToGene != null)
-            return indexToGene;
-        indexToGene = makeValKeyMapFromDoc(database.getCollection(GENE_INDEX_COL_ID).find().first());
-        return indexToGene;
+        return getGeneSymbolTable().toIndexToSymbolMap();
     }
 
     public Set<String> getPathwayStIdsForTerm(String term) {
@@ -1178,22 +2699,6 @@ public class PairwiseService {
     //    	return pathwayStIdToName;
     //    }
 
-    /**
-     * Consumes a document of key:value pairs.
-     * Returns a Map<Integer, String> of value to key
-     * @param doc
-     * @return
-     */
-    private Map<Integer, String> makeValKeyMapFromDoc(Document doc){
-        Map<Integer, String> rtn = new HashMap<>();
-        for(String key : doc.keySet()) {
-            Object value = doc.get(key);
-            if(value instanceof Integer)
-                rtn.put((Integer)value, key);
-        }
-        return rtn;
-    }
-
     private Document ensureCollectionDoc(MongoCollection<Document> collection,
                                          String gene) {
         // There should be only one document
@@ -1240,11 +2745,16 @@ public class PairwiseService {
      * of the Target Development Levels of each gene in the pathway.
      */
     public void insertReactomePathwayCache(Collection<Pathway> pathways) {
-        Map<String, Integer> geneToIndex = this.getIndexToGene().entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey));
+        GeneSymbolTable symbolTable = this.getGeneSymbolTable();
 
         List<Document> docs = new ArrayList<>();
         pathways.forEach(pw->{
-            List<Integer> indexList = pw.getGenes().stream().map(gene -> geneToIndex.get(gene)).collect(Collectors.toList());
+            List<Integer> indexList = new ArrayList<>(pw.getGenes().size());
+            for (String gene : pw.getGenes()) {
+                int index = symbolTable.getIndex(gene);
+                if (index >= 0)
+                    indexList.add(index);
+            }
             List<Document> pathwayOverlapDocs = new ArrayList<>();
             pw.getStIdToHypergeometricScoreMap().values().forEach(overlap ->{
                 Document doc = new Document();
@@ -1263,6 +2773,10 @@ public class PairwiseService {
         });
         //add collection of documents to database all at once
         database.getCollection(REACTOME_PATHWAYS_CACHE_COL_ID).insertMany(docs);
+        synchronized (pathwayOverlapGraphLock) {
+            pathwayOverlapGraph = null; // Reloaded at the next query
+        }
+        getNetworkLayoutCache().invalidateAll();
     }
 
     public void regenrateReactomeAnnotatedGenesCollection() {
@@ -1273,6 +2787,14 @@ public class PairwiseService {
     public void regenerateReactomePathwaysCacheCollection() {
         database.getCollection(REACTOME_PATHWAYS_CACHE_COL_ID).drop();
         database.createCollection(REACTOME_PATHWAYS_CACHE_COL_ID);
+        // Precomputed from the pathways of the previous release
+        database.getCollection(ENRICHMENT_CACHE_COL_ID).drop();
+        precomputedCutoffs = null;
+        synchronized (pathwayOverlapGraphLock) {
+            pathwayOverlapGraph = null;
+        }
+        getEnrichmentCache().invalidateAll();
+        getNetworkLayoutCache().invalidateAll();
     }
 
     //	public void regeneratePathwayCollections() {
@@ -1281,4 +2803,37 @@ public class PairwiseService {
     //		database.createCollection(this.PATHWAY_INDEX_COL_ID);
     //		database.createCollection(this.PATHWAYS_COL_ID);
     //	}
-}
\ No newline at end of file
+
+    /**
+     * Key of cached enrichment results: a gene with either the sorted DataDesc ids or a PRD cutoff
+     * for combined scores. The cutoff is kept as the float it is compared as in CombinedScores, so
+     * that cutoffs giving the same interactors share one entry.
+     */
+    private static final class EnrichmentKey {
+        private final String gene;
+        private final List<String> descIds;
+        private final Float prd;
+
+        EnrichmentKey(String gene, List<String> descIds, Double prd) {
+            this.gene = gene;
+            this.descIds = descIds == null ? null : new ArrayList<>(new TreeSet<>(descIds));
+            this.prd = prd == null ? null : prd.floatValue();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof EnrichmentKey))
+                return false;
+            EnrichmentKey other = (EnrichmentKey) obj;
+            return gene.equals(other.gene) &&
+                    Objects.equals(descIds, other.descIds) &&
+                    Objects.equals(prd, other.prd);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(gene, descIds, prd);
+        }
+    }
+
+}
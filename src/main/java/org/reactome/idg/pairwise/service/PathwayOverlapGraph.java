@@ -0,0 +1,227 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+
+/**
+ * The reactome_pathways collection held in memory for network construction. Pathways are indexed in
+ * the order of their stable ids. The overlapping pathways listed in the document of each pathway are
+ * kept as a sparse adjacency in CSR layout: the neighbors of pathway i are
+ * neighbors[rowStarts[i]..rowStarts[i + 1]), sorted by index, with parallel arrays of shared gene
+ * numbers and hypergeometric scores. Pathways only referred to as overlapping pathways are indexed
+ * too, but are not loaded.
+ */
+public class PathwayOverlapGraph {
+    private static final Logger logger = LoggerFactory.getLogger(PathwayOverlapGraph.class);
+
+    private final String[] stIds;
+    private final Map<String, Integer> stIdToIndex;
+    // Whether a pathway has its own document
+    private final boolean[] loaded;
+    // NaN for null
+    private final double[] weightedTDLs;
+    private final int[] geneNumbers;
+    private final int[] rowStarts;
+    private final int[] neighbors;
+    private final int[] sharedGenes;
+    // NaN for null
+    private final double[] hypergeometricScores;
+
+    private PathwayOverlapGraph(String[] stIds,
+                                Map<String, Integer> stIdToIndex,
+                                boolean[] loaded,
+                                double[] weightedTDLs,
+                                int[] geneNumbers,
+                                int[] rowStarts,
+                                int[] neighbors,
+                                int[] sharedGenes,
+                                double[] hypergeometricScores) {
+        this.stIds = stIds;
+        this.loaded = loaded;
+        this.weightedTDLs = weightedTDLs;
+        this.geneNumbers = geneNumbers;
+        this.rowStarts = rowStarts;
+        this.neighbors = neighbors;
+        this.sharedGenes = sharedGenes;
+        this.hypergeometricScores = hypergeometricScores;
+        this.stIdToIndex = stIdToIndex;
+    }
+
+    /**
+     * Load all documents in the reactome_pathways collection.
+     * @param collection
+     * @return
+     */
+    public static PathwayOverlapGraph load(MongoCollection<Document> collection) {
+        long time1 = System.currentTimeMillis();
+        List<Document> docs = new ArrayList<>();
+        MongoCursor<Document> cursor = collection.find().iterator();
+        try {
+            while (cursor.hasNext())
+                docs.add(cursor.next());
+        }
+        finally {
+            cursor.close();
+        }
+        PathwayOverlapGraph rtn = create(docs);
+        long time2 = System.currentTimeMillis();
+        logger.info("Loaded " + docs.size() + " pathways with " + rtn.neighbors.length + " overlaps in " + (time2 - time1) + " ms.");
+        return rtn;
+    }
+
+    /**
+     * @param docs documents in the layout of the reactome_pathways collection
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static PathwayOverlapGraph create(Collection<Document> docs) {
+        Set<String> stIdSet = new TreeSet<>();
+        for (Document doc : docs) {
+            stIdSet.add(doc.getString("_id"));
+            List<Document> overlaps = (List<Document>) doc.get("overlapping_pathways");
+            if (overlaps == null)
+                continue;
+            for (Document overlap : overlaps)
+                stIdSet.add(overlap.getString("stId"));
+        }
+        int size = stIdSet.size();
+        String[] stIds = stIdSet.toArray(new String[0]);
+        Map<String, Integer> stIdToIndex = new HashMap<>();
+        for (int i = 0; i < size; i++)
+            stIdToIndex.put(stIds[i], i);
+        boolean[] loaded = new boolean[size];
+        double[] weightedTDLs = new double[size];
+        Arrays.fill(weightedTDLs, Double.NaN);
+        int[] geneNumbers = new int[size];
+        List<List<Document>> rows = new ArrayList<>(Collections.nCopies(size, null));
+        int total = 0;
+        for (Document doc : docs) {
+            int index = stIdToIndex.get(doc.getString("_id"));
+            loaded[index] = true;
+            weightedTDLs[index] = toPrimitive(doc.getDouble("weighted_tdl_average"));
+            List<?> geneList = (List<?>) doc.get("gene_list");
+            geneNumbers[index] = geneList == null ? 0 : geneList.size();
+            List<Document> row = (List<Document>) doc.get("overlapping_pathways");
+            rows.set(index, row);
+            if (row != null)
+                total += row.size();
+        }
+        int[] rowStarts = new int[size + 1];
+        int[] neighbors = new int[total];
+        int[] sharedGenes = new int[total];
+        double[] hypergeometricScores = new double[total];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            rowStarts[i] = position;
+            if (rows.get(i) == null)
+                continue;
+            // Sorted by neighbor index for binary search
+            List<Document> row = new ArrayList<>(rows.get(i));
+            row.sort((doc1, doc2) -> Integer.compare(stIdToIndex.get(doc1.getString("stId")),
+                                                     stIdToIndex.get(doc2.getString("stId"))));
+            for (Document overlap : row) {
+                neighbors[position] = stIdToIndex.get(overlap.getString("stId"));
+                Integer shared = overlap.getInteger("numberOfSharedGenes");
+                sharedGenes[position] = shared == null ? 0 : shared;
+                hypergeometricScores[position] = toPrimitive(overlap.getDouble("hypergeometricScore"));
+                position ++;
+            }
+        }
+        rowStarts[size] = position;
+        return new PathwayOverlapGraph(stIds, stIdToIndex, loaded, weightedTDLs, geneNumbers, rowStarts, neighbors,
+                                       sharedGenes, hypergeometricScores);
+    }
+
+    private static double toPrimitive(Double value) {
+        return value == null ? Double.NaN : value;
+    }
+
+    private static Double toObject(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    public int size() {
+        return stIds.length;
+    }
+
+    /**
+     * @param stId
+     * @return -1 if the pathway is not known.
+     */
+    public int getIndex(String stId) {
+        Integer index = stIdToIndex.get(stId);
+        return index == null ? -1 : index;
+    }
+
+    public String getStId(int index) {
+        return stIds[index];
+    }
+
+    /**
+     * @param index
+     * @return true if the pathway has its own document in the collection.
+     */
+    public boolean isLoaded(int index) {
+        return index >= 0 && loaded[index];
+    }
+
+    public Double getWeightedTDL(int index) {
+        return toObject(weightedTDLs[index]);
+    }
+
+    public int getGeneNumber(int index) {
+        return geneNumbers[index];
+    }
+
+    /**
+     * Find the overlap of pathway to listed in the document of pathway from.
+     * @param from
+     * @param to
+     * @return the position of the overlap to be used with getSharedGenes() and getHypergeometricScore(),
+     * or -1 if to is not listed.
+     */
+    public int findOverlap(int from, int to) {
+        if (from < 0 || to < 0)
+            return -1;
+        int position = Arrays.binarySearch(neighbors, rowStarts[from], rowStarts[from + 1], to);
+        return position < 0 ? -1 : position;
+    }
+
+    /**
+     * Overlaps listed for a pathway are at positions getOverlapStart(index) until getOverlapEnd(index).
+     */
+    public int getOverlapStart(int index) {
+        return rowStarts[index];
+    }
+
+    public int getOverlapEnd(int index) {
+        return rowStarts[index + 1];
+    }
+
+    public int getNeighbor(int position) {
+        return neighbors[position];
+    }
+
+    public int getSharedGenes(int position) {
+        return sharedGenes[position];
+    }
+
+    public Double getHypergeometricScore(int position) {
+        return toObject(hypergeometricScores[position]);
+    }
+
+}
@@ -9,8 +9,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
 
+import org.bson.Document;
 import org.gk.model.GKInstance;
 import org.gk.model.ReactomeJavaConstants;
 import org.gk.persistence.MySQLAdaptor;
@@ -26,6 +28,12 @@ import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
 
 
 /**
@@ -39,10 +47,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 @Service
 public class PathwayService {
     private static final Logger logger = LoggerFactory.getLogger(PathwayService.class);
+    // Pathways and their UniProt ids of one release collected from MySQL
+    private static final String PATHWAY_SNAPSHOT_COL_ID = "pathway_snapshot";
 
     @Autowired
     private MySQLAdaptor mysqlDBA;
 
+    @Autowired
+    private MongoDatabase database;
+
     //attempt at removing need for pathways and PATHWAY_INDEX collections
     private Map<String, Set<Pathway>> geneToPathwayList;
     private Map<String, Pathway> pathwayStIdToPathway;
@@ -57,19 +70,59 @@ public class PathwayService {
     public PathwayService() {}
 
     /**
-     * This implementation collects the mapping between genes and pathways directly from a released
-     * MySQL database.
+     * Load the mapping between genes and pathways from the snapshot of the current release. The mapping
+     * is collected from the MySQL database and saved as the snapshot if there is no snapshot for the release.
+     * Nothing is cached if pathways cannot be loaded so that the next call tries again.
      */
-    @SuppressWarnings("unchecked")
     private void cachePathways(Map<String, String> uniprotToGene) {
-        geneToPathwayList = new HashMap<>();
-        pathwayStIdToPathway = new HashMap<>();
+        long time1 = System.currentTimeMillis();
+        Integer release = getReleaseNumber();
+        Map<Pathway, Set<String>> pathwayToUniProts = loadPathwaySnapshot(release);
+        if (pathwayToUniProts == null) {
+            logger.info("No pathway snapshot for release " + release + ". Collecting pathways from MySQL...");
+            pathwayToUniProts = grepPathwaysFromMySQL();
+            if (pathwayToUniProts != null && release != null)
+                savePathwaySnapshot(release, pathwayToUniProts);
+        }
+        cleanUpMySQL();
+        if (pathwayToUniProts == null)
+            return; // Errors have been logged
+        Map<String, Set<Pathway>> geneToPathwayList = new HashMap<>();
+        Map<String, Pathway> pathwayStIdToPathway = new HashMap<>();
+        for (Pathway pathwayObj : pathwayToUniProts.keySet()) {
+            pathwayStIdToPathway.put(pathwayObj.getStId(), pathwayObj);
+            for (String uniprotId : pathwayToUniProts.get(pathwayObj)) {
+                // Just in case isoform is used. But most unlikely.
+                String gene = uniprotToGene.get(uniprotId.split("-")[0]);
+                if (gene == null)
+                    continue;
+                pathwayObj.addGene(gene);
+                geneToPathwayList.compute(gene, (k, set) -> {
+                    if (set == null)
+                        set = new HashSet<>();
+                    set.add(pathwayObj);
+                    return set;
+                });
+            }
+        }
+        this.geneToPathwayList = geneToPathwayList;
+        this.pathwayStIdToPathway = pathwayStIdToPathway;
+        long time2 = System.currentTimeMillis();
+        logger.info("Cached " + pathwayStIdToPathway.size() + " pathways in " + (time2 - time1) + " ms.");
+    }
 
+    /**
+     * This implementation collects the mapping between pathways and UniProt ids directly from a released
+     * MySQL database.
+     * @return null if there is any error.
+     */
+    private Map<Pathway, Set<String>> grepPathwaysFromMySQL() {
         try {
             // Use pathways having laid-out ELV as the base pathways for easy comparison and visualization
             List<GKInstance> basePathways = new PathwayImpactAnalyzer().loadPathwaysForAnalysis(mysqlDBA);
             // Pull out all human pathways
             GKInstance human = mysqlDBA.fetchInstance(GKApplicationUtilities.HOMO_SAPIENS_DB_ID);
+            @SuppressWarnings("unchecked")
             Collection<GKInstance> humanPathways = mysqlDBA.fetchInstanceByAttribute(ReactomeJavaConstants.Pathway,
                     ReactomeJavaConstants.species, 
                     "=",
@@ -81,51 +134,128 @@ public class PathwayService {
             reactomeAnalyzer.getTopicHelper().setNeedCandidateRepeatedUnit(true);
             Map<GKInstance, Set<String>> pathway2uniprotIds = reactomeAnalyzer.grepIDsFromTopics(humanPathways);
             // Convert to the required data structures
+            Map<Pathway, Set<String>> rtn = new HashMap<>();
             for (GKInstance pathway : pathway2uniprotIds.keySet()) {
-                Set<String> uniprotIds = pathway2uniprotIds.get(pathway);
                 GKInstance stableIdInst = (GKInstance) pathway.getAttributeValue(ReactomeJavaConstants.stableIdentifier);
                 String stableId = (String) stableIdInst.getAttributeValue(ReactomeJavaConstants.identifier);
                 Pathway pathwayObj = new Pathway(stableId,
                         pathway.getDisplayName(),
                         basePathways.contains(pathway));
-                pathwayStIdToPathway.put(stableId, pathwayObj);
-                for (String uniprotId : uniprotIds) {
-                    // Just in case isoform is used. But most unlikely.
-                    String gene = uniprotToGene.get(uniprotId.split("-")[0]);
-                    if (gene == null)
-                        continue;
-                    pathwayObj.addGene(gene);
-                    geneToPathwayList.compute(gene, (k, set) -> {
-                        if (set == null)
-                            set = new HashSet<>();
-                        set.add(pathwayObj);
-                        return set;
-                    });
-                }
+                rtn.put(pathwayObj, pathway2uniprotIds.get(pathway));
             }
-            // Just close MySQLAdaptor. There is no need in other place
-            mysqlDBA.cleanUp();
+            return rtn;
         } 
         catch (Exception e) {
             logger.error(e.getMessage(), e);
+            return null;
         }
     }
 
-    public Map<String, Pathway> getPathwayStIdToPathway(Map<String, String> uniprotToGene){
+    /**
+     * @return null if the release cannot be fetched from MySQL.
+     */
+    private Integer getReleaseNumber() {
+        try {
+            return mysqlDBA.getReleaseNumber();
+        }
+        catch (Exception e) {
+            logger.warn("Cannot get the release number: " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private void cleanUpMySQL() {
+        // Just close MySQLAdaptor. There is no need in other place
+        try {
+            mysqlDBA.cleanUp();
+        }
+        catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Load the snapshot saved for a release.
+     * @param release null to load whatever is saved, e.g. when MySQL is not available.
+     * @return null if there is no snapshot for the release.
+     */
+    private Map<Pathway, Set<String>> loadPathwaySnapshot(Integer release) {
+        Map<Pathway, Set<String>> rtn = new HashMap<>();
+        MongoCollection<Document> collection = database.getCollection(PATHWAY_SNAPSHOT_COL_ID);
+        FindIterable<Document> docs = release == null ? collection.find() : collection.find(Filters.eq("release", release));
+        MongoCursor<Document> cursor = docs.iterator();
+        try {
+            while (cursor.hasNext()) {
+                Document doc = cursor.next();
+                Pathway pathwayObj = new Pathway(doc.getString("_id"),
+                        doc.getString("name"),
+                        doc.getBoolean("bottomLevel", false));
+                @SuppressWarnings("unchecked")
+                List<String> uniprotIds = (List<String>) doc.get("uniprots");
+                rtn.put(pathwayObj, new HashSet<>(uniprotIds));
+            }
+        }
+        finally {
+            cursor.close();
+        }
+        return rtn.isEmpty() ? null : rtn;
+    }
+
+    private void savePathwaySnapshot(int release, Map<Pathway, Set<String>> pathwayToUniProts) {
+        List<Document> docs = new ArrayList<>();
+        for (Pathway pathway : pathwayToUniProts.keySet()) {
+            Document doc = new Document();
+            doc.append("_id", pathway.getStId());
+            doc.append("release", release);
+            doc.append("name", pathway.getName());
+            doc.append("bottomLevel", pathway.isBottomLevel());
+            doc.append("uniprots", new ArrayList<>(new TreeSet<>(pathwayToUniProts.get(pathway))));
+            docs.add(doc);
+        }
+        // Only one release is kept
+        MongoCollection<Document> collection = database.getCollection(PATHWAY_SNAPSHOT_COL_ID);
+        collection.drop();
+        if (docs.size() > 0)
+            collection.insertMany(docs);
+        collection.createIndex(Indexes.ascending("release"));
+        // Enrichment results precomputed from the replaced pathways are stale
+        database.getCollection(PairwiseService.ENRICHMENT_CACHE_COL_ID).drop();
+        logger.info("Saved the snapshot of " + docs.size() + " pathways for release " + release + ".");
+    }
+
+    /**
+     * Collect pathways from MySQL and save them as the snapshot of the current release so that
+     * the web app doesn't need to go through MySQL. The snapshot is replaced if it exists.
+     */
+    public void regeneratePathwaySnapshot() {
+        Integer release = getReleaseNumber();
+        if (release == null)
+            throw new IllegalStateException("Cannot get the release number from MySQL.");
+        Map<Pathway, Set<String>> pathwayToUniProts = grepPathwaysFromMySQL();
+        if (pathwayToUniProts == null)
+            throw new IllegalStateException("Cannot collect pathways from MySQL.");
+        savePathwaySnapshot(release, pathwayToUniProts);
+    }
+
+    public synchronized Map<String, Pathway> getPathwayStIdToPathway(Map<String, String> uniprotToGene){
         if(this.pathwayStIdToPathway == null)
             this.cachePathways(uniprotToGene);
-        return this.pathwayStIdToPathway;
+        // Empty after a failure
+        return this.pathwayStIdToPathway == null ? new HashMap<>() : this.pathwayStIdToPathway;
     }
 
-    public Map<String, Set<Pathway>> getGeneToPathwayList(Map<String, String> uniprotToGene){
+    public synchronized Map<String, Set<Pathway>> getGeneToPathwayList(Map<String, String> uniprotToGene){
         if(this.geneToPathwayList == null)
             this.cachePathways(uniprotToGene);
-        return this.geneToPathwayList;
+        return this.geneToPathwayList == null ? new HashMap<>() : this.geneToPathwayList;
     }  
 
-    public Map<String, Set<String>> getGeneToPathwayStId(Map<String, String> uniprotToGene){
+    public synchronized Map<String, Set<String>> getGeneToPathwayStId(Map<String, String> uniprotToGene){
         if(this.geneToPathwayStId == null) {
-            this.geneToPathwayStId =  getGeneToPathwayList(uniprotToGene).entrySet().stream()
+            Map<String, Set<Pathway>> geneToPathways = getGeneToPathwayList(uniprotToGene);
+            if(this.geneToPathwayList == null)
+                return new HashMap<>(); // Failed to load. Try again at the next call.
+            this.geneToPathwayStId =  geneToPathways.entrySet().stream()
                     .collect(Collectors.toMap(
                             Map.Entry::getKey, 
                             e -> e.getValue().stream().map(Pathway::getStId).collect(Collectors.toSet())));
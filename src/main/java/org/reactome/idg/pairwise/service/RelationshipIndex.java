@@ -0,0 +1,45 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.Set;
+
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+
+/**
+ * A read-only view of the relationships collection that can be queried without going to
+ * the database. Genes are referred by their indices in the GENE_INDEX collection. Returned
+ * arrays of gene indices are sorted and should not be modified.
+ */
+public interface RelationshipIndex {
+
+    /**
+     * @param gene
+     * @return the index of the gene or -1 if the gene has no relationship document.
+     */
+    public int getGeneIndex(String gene);
+
+    /**
+     * @return the symbol table the gene indices of this index refer to.
+     */
+    public GeneSymbolTable getGeneSymbolTable();
+
+    public Set<String> getDataDescIds();
+
+    public int getPosCount(String descId, int geneIndex);
+
+    public int getNegCount(String descId, int geneIndex);
+
+    /**
+     * @param descId
+     * @param geneIndex
+     * @return an empty array if there is no positive relationship.
+     */
+    public int[] getPos(String descId, int geneIndex);
+
+    /**
+     * @param descId
+     * @param geneIndex
+     * @return an empty array if there is no negative relationship.
+     */
+    public int[] getNeg(String descId, int geneIndex);
+
+}
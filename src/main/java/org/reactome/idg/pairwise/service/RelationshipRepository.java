@@ -0,0 +1,377 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.reactome.idg.pairwise.util.CombinedScores;
+import org.reactome.idg.pairwise.util.RelationshipCodec;
+import org.reactome.idg.pairwise.util.WeightedLruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+import com.mongodb.client.AggregateIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Updates;
+
+/**
+ * All access to the relationships collection goes through this class so that each access pattern
+ * can be measured and tuned in one place. Each document has a gene symbol as _id, a sub-document
+ * having pos and neg for each DataDesc id, and a combined_score sub-document. pos and neg are written
+ * in the RelationshipCodec format together with posNum and negNum so that counts can be queried without
+ * the lists. Documents written before that have no numbers until migrateRelationshipEncoding() is run.
+ * Single-gene fetches are cached in a WeightedLruCache bounded by estimated bytes. Returned documents
+ * may be shared via the cache and should not be modified.
+ */
+@Repository
+public class RelationshipRepository {
+    public static final String COLLECTION_ID = "relationships";
+    public static final String COMBINED_SCORE = "combined_score";
+    private static final Logger logger = LoggerFactory.getLogger(RelationshipRepository.class);
+    // Warn once about documents that are not migrated
+    private static final AtomicBoolean unmigratedWarned = new AtomicBoolean();
+
+    @Autowired
+    private MongoDatabase database;
+
+    @Autowired
+    private ServiceConfig config;
+
+    private WeightedLruCache<CacheKey, Document> cache;
+    // Incremented by each invalidation under the lock of the cache so that a document fetched before
+    // an invalidation is not put back into the cache after it
+    private long cacheGeneration;
+
+    // Number of calls for each access pattern
+    private final Map<String, AtomicLong> accessCounts = new ConcurrentHashMap<>();
+
+    public RelationshipRepository() {
+    }
+
+    public MongoCollection<Document> getCollection() {
+        return database.getCollection(COLLECTION_ID);
+    }
+
+    private void record(String pattern) {
+        accessCounts.computeIfAbsent(pattern, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * @return numbers of calls keyed by access patterns.
+     */
+    public Map<String, Long> getAccessCounts() {
+        Map<String, Long> rtn = new TreeMap<>();
+        accessCounts.forEach((pattern, count) -> rtn.put(pattern, count.get()));
+        return rtn;
+    }
+
+    private synchronized WeightedLruCache<CacheKey, Document> getCache() {
+        if (cache == null) {
+            long maxBytes = config == null ? 0 : config.getRelationshipCacheMaxBytes();
+            cache = new WeightedLruCache<>(maxBytes, RelationshipRepository::estimateBytes);
+        }
+        return cache;
+    }
+
+    /**
+     * @return hit, miss and eviction counters and the size of the document cache.
+     */
+    public Map<String, Number> getCacheStats() {
+        return getCache().getStats();
+    }
+
+    /**
+     * Drop all cached documents, e.g. after the collection is reloaded by another process.
+     */
+    public void invalidateCache() {
+        invalidateCache(null);
+    }
+
+    /**
+     * @param filter null for all keys
+     */
+    private void invalidateCache(Predicate<CacheKey> filter) {
+        WeightedLruCache<CacheKey, Document> cache = getCache();
+        synchronized (cache) {
+            cacheGeneration ++;
+            if (filter == null)
+                cache.invalidateAll();
+            else
+                cache.invalidateIf(filter);
+        }
+    }
+
+    private Document findCached(CacheKey key, Bson projection) {
+        if (key.gene == null)
+            return null;
+        WeightedLruCache<CacheKey, Document> cache = getCache();
+        Document rtn = cache.get(key);
+        if (rtn != null)
+            return rtn;
+        long generation;
+        synchronized (cache) {
+            generation = cacheGeneration;
+        }
+        FindIterable<Document> results = getCollection().find(Filters.eq("_id", key.gene));
+        if (projection != null)
+            results.projection(projection);
+        rtn = results.first();
+        synchronized (cache) {
+            // The document may be stale if the cache has been invalidated during the fetch
+            if (generation == cacheGeneration)
+                cache.put(key, rtn); // Missing genes are not cached
+        }
+        return rtn;
+    }
+
+    /**
+     * Fetch the whole document for a gene. Use findGene(String, Collection) if only some fields
+     * are needed.
+     * @param gene
+     * @return null if there is no document for the gene.
+     */
+    public Document findGene(String gene) {
+        record("findGene");
+        return findCached(new CacheKey(gene, null), null);
+    }
+
+    /**
+     * Fetch the listed fields for a gene. The returned document has _id even if none of the
+     * fields exists so that a missing gene can be distinguished from missing fields.
+     * @param gene
+     * @param fields
+     * @return null if there is no document for the gene.
+     */
+    public Document findGene(String gene, Collection<String> fields) {
+        record("findGeneFields");
+        return findCached(new CacheKey(gene, new HashSet<>(fields)), createProjection(fields));
+    }
+
+    /**
+     * Fetch the listed fields for a set of genes in one query. Each gene is returned at most once.
+     * @param genes
+     * @param fields
+     * @return
+     */
+    public FindIterable<Document> findGenes(Collection<String> genes, Collection<String> fields) {
+        record("findGenes");
+        return getCollection().find(Filters.in("_id", genes))
+                .projection(createProjection(fields));
+    }
+
+    private Bson createProjection(Collection<String> fields) {
+        return Projections.include(fields.toArray(new String[0]));
+    }
+
+    /**
+     * Fetch the top-level keys (i.e. DataDesc ids and combined_score) for a gene without the values.
+     * @param gene
+     * @return null if there is no document for the gene.
+     */
+    public Set<String> findKeys(String gene) {
+        record("findKeys");
+        Document keysExp = new Document("$map",
+                new Document("input", new Document("$objectToArray", "$$ROOT"))
+                        .append("as", "field")
+                        .append("in", "$$field.k"));
+        Document result = getCollection().aggregate(Arrays.asList(
+                Aggregates.match(Filters.eq("_id", gene)),
+                Aggregates.project(new Document("keys", keysExp))))
+                .first();
+        if (result == null)
+            return null;
+        Set<String> rtn = new LinkedHashSet<>();
+        for (Object key : (List<?>) result.get("keys")) {
+            if (!key.equals("_id"))
+                rtn.add((String) key);
+        }
+        return rtn;
+    }
+
+    /**
+     * @param gene
+     * @return the decoded combined_score, or null if either the gene or its combined scores
+     * doesn't exist.
+     */
+    public CombinedScores findCombinedScores(String gene) {
+        Document result = findGene(gene, Collections.singletonList(COMBINED_SCORE));
+        return result == null ? null : CombinedScores.decode(result.get(COMBINED_SCORE));
+    }
+
+    /**
+     * Count pos and neg partners in the database for a set of genes. The returned document has a
+     * sub-document having posNum and/or negNum for each DataDesc. Legacy arrays are counted with $size
+     * after removing duplicates as RelationshipCodec does. Binary lists without stored numbers, which
+     * are left by documents not migrated, are returned as they are and should be counted via
+     * decodeRelNumber().
+     * @param genes
+     * @param descIds
+     * @return
+     */
+    public AggregateIterable<Document> aggregateRelNumbers(Collection<String> genes, Collection<String> descIds) {
+        record("aggregateRelNumbers");
+        Document projection = new Document();
+        for (String descId : descIds) {
+            projection.append(descId, new Document()
+                    .append("posNum", createRelNumberExpression(descId, "pos"))
+                    .append("negNum", createRelNumberExpression(descId, "neg")));
+        }
+        return getCollection().aggregate(Arrays.asList(Aggregates.match(Filters.in("_id", genes)),
+                                                       Aggregates.project(projection)));
+    }
+
+    private Document createRelNumberExpression(String descId, String field) {
+        String path = "$" + descId + "." + field;
+        return new Document("$cond", Arrays.asList(new Document("$isArray", path),
+                                                   new Document("$size", new Document("$setUnion", Arrays.asList(path, Collections.emptyList()))),
+                                                   new Document("$ifNull", Arrays.asList(path + "Num", path))));
+    }
+
+    /**
+     * Iterate all documents. The cursor doesn't time out and must be closed.
+     * @return
+     */
+    public MongoCursor<Document> iterateAll() {
+        record("iterateAll");
+        return getCollection().find().noCursorTimeout(true).iterator();
+    }
+
+    /**
+     * Iterate the listed fields of all documents. The cursor doesn't time out and must be closed.
+     * @param fields
+     * @return
+     */
+    public MongoCursor<Document> iterateAll(Collection<String> fields) {
+        record("iterateAllFields");
+        return getCollection().find()
+                .projection(createProjection(fields))
+                .noCursorTimeout(true)
+                .iterator();
+    }
+
+    /**
+     * Make sure there is a document for the passed gene.
+     * @param gene
+     */
+    public void ensureGene(String gene) {
+        if (getCollection().find(Filters.eq("_id", gene)).projection(Projections.include("_id")).first() != null)
+            return;
+        getCollection().insertOne(new Document("_id", gene));
+    }
+
+    public void updateGene(String gene, Bson update) {
+        record("updateGene");
+        getCollection().updateOne(Filters.eq("_id", gene), update);
+        invalidateCache(key -> key.gene.equals(gene));
+    }
+
+    /**
+     * Remove a top-level field from all documents.
+     * @param field
+     */
+    public void unsetAll(String field) {
+        record("unsetAll");
+        getCollection().updateMany(new Document(), Updates.unset(field));
+        invalidateCache();
+    }
+
+    /**
+     * Roughly estimate the heap size of a decoded document for the cache budget.
+     * @param value
+     * @return
+     */
+    static long estimateBytes(Object value) {
+        if (value instanceof Map) {
+            long size = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                size += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 24;
+            for (Object element : (Collection<?>) value)
+                size += 8 + estimateBytes(element);
+            return size;
+        }
+        if (value instanceof String)
+            return 40 + 2L * ((String) value).length();
+        if (value instanceof Binary)
+            return 32 + ((Binary) value).length();
+        return 16; // Boxed numbers and others
+    }
+
+    /**
+     * Decode pos or neg in a relationship sub-document.
+     * @param relDoc
+     * @param field pos or neg
+     * @return null if the field doesn't exist.
+     */
+    public static int[] decodeIndices(Document relDoc, String field) {
+        if (relDoc == null)
+            return null;
+        return RelationshipCodec.decode(relDoc.get(field));
+    }
+
+    /**
+     * Decode posNum or negNum returned from aggregateRelNumbers().
+     * @param value
+     * @return null if value is null.
+     */
+    public static Integer decodeRelNumber(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof Number)
+            return ((Number) value).intValue();
+        if (RelationshipCodec.isEncoded(value) && unmigratedWarned.compareAndSet(false, true))
+            logger.warn("Relationship lists without posNum or negNum are fetched to be counted. " +
+                        "Run migrateRelationshipEncoding() to store the numbers.");
+        return RelationshipCodec.size(value);
+    }
+
+    private static final class CacheKey {
+        private final String gene;
+        // null for the whole document
+        private final Set<String> fields;
+
+        CacheKey(String gene, Set<String> fields) {
+            this.gene = gene;
+            this.fields = fields;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CacheKey))
+                return false;
+            CacheKey other = (CacheKey) obj;
+            return gene.equals(other.gene) && Objects.equals(fields, other.fields);
+        }
+
+        @Override
+        public int hashCode() {
+            return gene.hashCode() * 31 + Objects.hashCode(fields);
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.reactome.idg.pairwise.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.List;
+
+import org.reactome.idg.pairwise.model.DataDesc;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Write the content of the relationships, GENE_INDEX and datadescriptions collections into a single
+ * binary file that can be memory-mapped by MappedRelationshipIndex. All numbers are big-endian.
+ * <pre>
+ * header:       int magic, int version, int rowCount, int descCount,
+ *               long geneTableOffset, long descTableOffset, long dataOffset
+ * gene table:   rowCount x UTF symbol ("" for an unused index), then
+ *               int wordCount and wordCount x long for genes having a relationship document
+ * desc table:   descCount x (UTF id, int digitalKey, UTF provenance, UTF bioSource, UTF dataType, UTF origin,
+ *               long posBlock, int posNeighborCount, long negBlock, int negNeighborCount)
+ * data:         CSR blocks: (rowCount + 1) x int offsets followed by neighborCount x int neighbors.
+ *               Block positions in the desc table are relative to dataOffset. A block position of -1
+ *               means no relationship of that sign for the DataDesc.
+ * </pre>
+ * Strings are written by DataOutput.writeUTF and "" is used for null.
+ */
+public class RelationshipSnapshotWriter {
+    private static final Logger logger = LoggerFactory.getLogger(RelationshipSnapshotWriter.class);
+    // Length of the fixed header in bytes
+    static final int HEADER_LENGTH = 4 * 4 + 3 * 8;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    public RelationshipSnapshotWriter() {
+    }
+
+    public void write(File file,
+                      CsrRelationshipIndex index,
+                      List<DataDesc> descs) throws IOException {
+        long time1 = System.currentTimeMillis();
+        int rowCount = index.getRowCount();
+        byte[] geneTable = createGeneTable(index, rowCount);
+        // Block positions are relative so the desc table can be generated before the data is written
+        ByteArrayOutputStream descBytes = new ByteArrayOutputStream();
+        DataOutputStream descOut = new DataOutputStream(descBytes);
+        long position = 0;
+        for (DataDesc desc : descs) {
+            descOut.writeUTF(desc.getId());
+            descOut.writeInt(desc.getDigitalKey());
+            descOut.writeUTF(nullToEmpty(desc.getProvenance()));
+            descOut.writeUTF(nullToEmpty(desc.getBioSource()));
+            descOut.writeUTF(desc.getDataType() == null ? "" : desc.getDataType().name());
+            descOut.writeUTF(nullToEmpty(desc.getOrigin()));
+            for (boolean isPos : new boolean[] {true, false}) {
+                int[][] block = index.getBlock(desc.getId(), isPos);
+                if (block == null) {
+                    descOut.writeLong(-1L);
+                    descOut.writeInt(0);
+                    continue;
+                }
+                descOut.writeLong(position);
+                descOut.writeInt(block[1].length);
+                position += 4L * (block[0].length + block[1].length);
+            }
+        }
+        descOut.close();
+        byte[] descTable = descBytes.toByteArray();
+        long geneTableOffset = HEADER_LENGTH;
+        long descTableOffset = geneTableOffset + geneTable.length;
+        long dataOffset = descTableOffset + descTable.length;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            header.putInt(MappedRelationshipIndex.MAGIC)
+                  .putInt(MappedRelationshipIndex.VERSION)
+                  .putInt(rowCount)
+                  .putInt(descs.size())
+                  .putLong(geneTableOffset)
+                  .putLong(descTableOffset)
+                  .putLong(dataOffset);
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, ByteBuffer.wrap(geneTable));
+            writeFully(channel, ByteBuffer.wrap(descTable));
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            for (DataDesc desc : descs) {
+                for (boolean isPos : new boolean[] {true, false}) {
+                    int[][] block = index.getBlock(desc.getId(), isPos);
+                    if (block == null)
+                        continue;
+                    writeInts(channel, buffer, block[0]);
+                    writeInts(channel, buffer, block[1]);
+                }
+            }
+            channel.force(true);
+        }
+        long time2 = System.currentTimeMillis();
+        logger.info("Wrote relationship snapshot " + file.getAbsolutePath() + " (" +
+                    file.length() / (1024 * 1024) + " MB) in " + (time2 - time1) + " ms.");
+    }
+
+    private byte[] createGeneTable(CsrRelationshipIndex index, int rowCount) throws IOException {
+        GeneSymbolTable symbolTable = index.getGeneSymbolTable();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int i = 0; i < rowCount; i++)
+            out.writeUTF(nullToEmpty(symbolTable.getSymbol(i)));
+        BitSet genesWithDoc = index.getGenesWithDoc();
+        long[] words = genesWithDoc.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words)
+            out.writeLong(word);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException {
+        buffer.clear();
+        IntBuffer intBuffer = buffer.asIntBuffer();
+        int start = 0;
+        while (start < values.length) {
+            int length = Math.min(intBuffer.capacity(), values.length - start);
+            intBuffer.clear();
+            intBuffer.put(values, start, length);
+            buffer.clear();
+            buffer.limit(length * 4);
+            writeFully(channel, buffer);
+            start += length;
+        }
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+}
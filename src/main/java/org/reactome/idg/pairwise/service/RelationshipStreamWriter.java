@@ -0,0 +1,150 @@
+package org.reactome.idg.pairwise.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.reactome.idg.pairwise.model.DataDesc;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+import org.reactome.idg.pairwise.util.TermResolver;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Write relationships as a JSON array in the same layout as serialized PairwiseRelationship objects,
+ * one relationship at a time, so that a large result doesn't need to be held in memory. Gene indices
+ * are mapped to symbols, or UniProt ids if a TermResolver is provided, while they are written.
+ * The array is closed by finish() only, so that a stream broken by an error is not terminated as a
+ * valid JSON array. The underlying stream is flushed but not closed by close().
+ */
+public class RelationshipStreamWriter implements Closeable {
+    private final JsonGenerator generator;
+    private final GeneSymbolTable symbolTable;
+    // Used to write UniProt ids instead of genes
+    private final TermResolver resolver;
+    private final boolean numberOnly;
+
+    public RelationshipStreamWriter(OutputStream os,
+                                    GeneSymbolTable symbolTable,
+                                    TermResolver resolver,
+                                    boolean numberOnly) throws IOException {
+        this.generator = new ObjectMapper().getFactory().createGenerator(os);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Otherwise close() terminates the array after an error
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        this.symbolTable = symbolTable;
+        this.resolver = resolver;
+        this.numberOnly = numberOnly;
+        generator.writeStartArray();
+    }
+
+    /**
+     * Write a relationship having numbers of partners only. This should be used when no UniProt
+     * mapping is needed.
+     * @param gene
+     * @param desc
+     * @param posNum null for no pos
+     * @param negNum null for no neg
+     * @throws IOException
+     */
+    public void writeNumbers(String gene, DataDesc desc, Integer posNum, Integer negNum) throws IOException {
+        writeStart(gene, desc);
+        if (posNum != null)
+            generator.writeNumberField("posNum", posNum);
+        if (negNum != null)
+            generator.writeNumberField("negNum", negNum);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write a relationship from partner indices. Partners are counted instead of listed if
+     * numberOnly is true.
+     * @param gene
+     * @param desc
+     * @param pos null for no pos
+     * @param neg null for no neg
+     * @throws IOException
+     */
+    public void write(String gene, DataDesc desc, int[] pos, int[] neg) throws IOException {
+        writeStart(gene, desc);
+        if (numberOnly) {
+            if (pos != null)
+                generator.writeNumberField("posNum", countPartners(pos));
+            if (neg != null)
+                generator.writeNumberField("negNum", countPartners(neg));
+        }
+        else {
+            if (pos != null)
+                writePartners("posGenes", pos);
+            if (neg != null)
+                writePartners("negGenes", neg);
+        }
+        generator.writeEndObject();
+    }
+
+    private void writeStart(String gene, DataDesc desc) throws IOException {
+        generator.writeStartObject();
+        if (gene != null)
+            generator.writeStringField("gene", gene);
+        if (desc != null) {
+            generator.writeFieldName("dataDesc");
+            generator.writeObject(desc);
+        }
+    }
+
+    private int countPartners(int[] indices) {
+        if (resolver != null)
+            return mapToUniProts(indices).size();
+        int count = 0;
+        for (int index : indices) {
+            if (isValidGene(symbolTable.getSymbol(index)))
+                count ++;
+        }
+        return count;
+    }
+
+    private void writePartners(String field, int[] indices) throws IOException {
+        generator.writeArrayFieldStart(field);
+        if (resolver != null) {
+            for (String uniprot : mapToUniProts(indices))
+                generator.writeString(uniprot);
+        }
+        else {
+            for (int index : indices) {
+                String gene = symbolTable.getSymbol(index);
+                if (isValidGene(gene))
+                    generator.writeString(gene);
+            }
+        }
+        generator.writeEndArray();
+    }
+
+    private Set<String> mapToUniProts(int[] indices) {
+        Set<String> rtn = new LinkedHashSet<>();
+        for (int index : indices)
+            rtn.addAll(resolver.getUniProts(symbolTable.getSymbol(index)));
+        return rtn;
+    }
+
+    private boolean isValidGene(String gene) {
+        //remove null that results from gene name mapping between species
+        return gene != null && !gene.equals("null");
+    }
+
+    /**
+     * Close the array after all relationships have been written.
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        generator.writeEndArray();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close(); // The target is flushed but not closed
+    }
+
+}
@@ -7,8 +7,31 @@ package org.reactome.idg.pairwise.service;
  */
 public class ServiceConfig {
 
+	// Used when batchMaxTerms is not configured
+	public static final int DEFAULT_BATCH_MAX_TERMS = 500;
+	
 	private String coreWSURL;
 	private String eventHierarchyUrl;
+	// Serve relationship queries from an in-memory index instead of MongoDB
+	private boolean relationshipIndexEnabled;
+	// Snapshot file generated by RelationshipSnapshotWriter. Used before relationshipIndexEnabled.
+	private String relationshipSnapshotFile;
+	// For batch queries of multiple terms
+	private int batchMaxTerms;
+	private int batchThreads;
+	// Budget in estimated bytes for relationship documents cached in RelationshipRepository
+	private long relationshipCacheMaxBytes;
+	// Budget in estimated bytes for enrichment results cached in PairwiseService
+	private long enrichmentCacheMaxBytes;
+	// Budget in estimated bytes for pathway network layouts cached in PairwiseService
+	private long networkLayoutCacheMaxBytes;
+	// Load reference data in the background when the web app starts
+	private boolean warmUpEnabled;
+	// Required by admin operations in the web app. They are disabled if this is empty.
+	private String adminToken;
+	// For CombinedScoreMatrix. The file is used before loading from MongoDB.
+	private boolean combinedScoreMatrixEnabled;
+	private String combinedScoreMatrixFile;
 	
 	public ServiceConfig() {
 		
@@ -29,5 +52,93 @@ public class ServiceConfig {
 	public void setEventHierarchyUrl(String eventHierarchyUrl) {
 		this.eventHierarchyUrl = eventHierarchyUrl;
 	}
+
+	public boolean isRelationshipIndexEnabled() {
+		return relationshipIndexEnabled;
+	}
+
+	public void setRelationshipIndexEnabled(boolean relationshipIndexEnabled) {
+		this.relationshipIndexEnabled = relationshipIndexEnabled;
+	}
+
+	public String getRelationshipSnapshotFile() {
+		return relationshipSnapshotFile;
+	}
+
+	public void setRelationshipSnapshotFile(String relationshipSnapshotFile) {
+		this.relationshipSnapshotFile = relationshipSnapshotFile;
+	}
+
+	public int getBatchMaxTerms() {
+		return batchMaxTerms;
+	}
+
+	public void setBatchMaxTerms(int batchMaxTerms) {
+		this.batchMaxTerms = batchMaxTerms;
+	}
+
+	public int getBatchThreads() {
+		return batchThreads;
+	}
+
+	public void setBatchThreads(int batchThreads) {
+		this.batchThreads = batchThreads;
+	}
+
+	public long getRelationshipCacheMaxBytes() {
+		return relationshipCacheMaxBytes;
+	}
+
+	public void setRelationshipCacheMaxBytes(long relationshipCacheMaxBytes) {
+		this.relationshipCacheMaxBytes = relationshipCacheMaxBytes;
+	}
+
+	public long getEnrichmentCacheMaxBytes() {
+		return enrichmentCacheMaxBytes;
+	}
+
+	public void setEnrichmentCacheMaxBytes(long enrichmentCacheMaxBytes) {
+		this.enrichmentCacheMaxBytes = enrichmentCacheMaxBytes;
+	}
+
+	public long getNetworkLayoutCacheMaxBytes() {
+		return networkLayoutCacheMaxBytes;
+	}
+
+	public void setNetworkLayoutCacheMaxBytes(long networkLayoutCacheMaxBytes) {
+		this.networkLayoutCacheMaxBytes = networkLayoutCacheMaxBytes;
+	}
+
+	public boolean isWarmUpEnabled() {
+		return warmUpEnabled;
+	}
+
+	public void setWarmUpEnabled(boolean warmUpEnabled) {
+		this.warmUpEnabled = warmUpEnabled;
+	}
+
+	public String getAdminToken() {
+		return adminToken;
+	}
+
+	public void setAdminToken(String adminToken) {
+		this.adminToken = adminToken;
+	}
+
+	public boolean isCombinedScoreMatrixEnabled() {
+		return combinedScoreMatrixEnabled;
+	}
+
+	public void setCombinedScoreMatrixEnabled(boolean combinedScoreMatrixEnabled) {
+		this.combinedScoreMatrixEnabled = combinedScoreMatrixEnabled;
+	}
+
+	public String getCombinedScoreMatrixFile() {
+		return combinedScoreMatrixFile;
+	}
+
+	public void setCombinedScoreMatrixFile(String combinedScoreMatrixFile) {
+		this.combinedScoreMatrixFile = combinedScoreMatrixFile;
+	}
 	
 }
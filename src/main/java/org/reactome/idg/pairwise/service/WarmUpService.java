@@ -0,0 +1,154 @@
+package org.reactome.idg.pairwise.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.reactome.idg.pairwise.model.ComponentStatus;
+import org.reactome.idg.pairwise.model.ComponentStatus.State;
+import org.reactome.idg.pairwise.model.ReadinessStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Load the reference data that is otherwise loaded by whichever request needs it first. Components are
+ * loaded in parallel on their own daemon threads. Components depending on others (e.g. the enrichment
+ * engine on the pathway maps) just wait for them, since each lazy loader has its own lock. Lazy loaders
+ * don't cache failures, so a failed component is loaded again with an increasing delay until it is ready,
+ * and is found right away if a request has loaded it in the meantime.
+ */
+@Service
+public class WarmUpService {
+    private static final Logger logger = LoggerFactory.getLogger(WarmUpService.class);
+    // The delay before loading a failed component again is doubled after each failure up to the maximum
+    private static final long FIRST_RETRY_DELAY = 5 * 1000L;
+    private static final long MAX_RETRY_DELAY = 5 * 60 * 1000L;
+
+    @Autowired
+    private PairwiseService pairwiseService;
+
+    @Autowired
+    private PathwayService pathwayService;
+
+    @Autowired
+    private ServiceConfig config;
+
+    // In the order of registration
+    private final Map<String, ComponentStatus> nameToStatus = new LinkedHashMap<>();
+    private boolean started;
+
+    public WarmUpService() {
+    }
+
+    /**
+     * Start loading all components in the background. Calling this more than once does nothing.
+     */
+    public synchronized void start() {
+        if (started)
+            return;
+        started = true;
+        if (config != null && !config.isWarmUpEnabled()) {
+            logger.info("Warm-up is disabled.");
+            return;
+        }
+        Map<String, Runnable> nameToLoader = new LinkedHashMap<>();
+        nameToLoader.put("uniProtToGene", () -> pairwiseService.getTermResolver());
+        nameToLoader.put("geneIndex", () -> pairwiseService.getGeneSymbolTable());
+        nameToLoader.put("reactomeAnnotatedGenes", () -> pairwiseService.getReactomeAnnotatedGenes());
+        nameToLoader.put("graphHierarchy", () -> pairwiseService.getGraphHierarchy());
+        nameToLoader.put("hierarchicalPathways", () -> {
+            // Errors are logged and an empty list is returned
+            if (pathwayService.getHierarchicalOrderedPathways().isEmpty())
+                throw new IllegalStateException("No pathway is loaded from the event hierarchy.");
+        });
+        nameToLoader.put("pathways", () -> {
+            if (pathwayService.getPathwayStIdToPathway(pairwiseService.getUniProtToGene()).isEmpty())
+                throw new IllegalStateException("No pathway is loaded.");
+        });
+        nameToLoader.put("enrichmentEngine", () -> {
+            if (pairwiseService.getEnrichmentEngine().getPathwayCount() == 0)
+                throw new IllegalStateException("No pathway is loaded for enrichment.");
+        });
+        nameToLoader.put("pathwayOverlapGraph", () -> pairwiseService.getPathwayOverlapGraph());
+        // Both do nothing if they are not configured
+        nameToLoader.put("relationshipIndex", () -> pairwiseService.getRelationshipIndex());
+        nameToLoader.put("combinedScoreMatrix", () -> pairwiseService.getCombinedScoreMatrix());
+        for (String name : nameToLoader.keySet())
+            nameToStatus.put(name, new ComponentStatus(name));
+        for (String name : nameToLoader.keySet()) {
+            Runnable loader = nameToLoader.get(name);
+            // Named after the component so that a stuck loader can be found in a thread dump
+            Thread thread = new Thread(() -> load(name, loader), "pairwise-warm-up-" + name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void load(String name, Runnable loader) {
+        long delay = FIRST_RETRY_DELAY;
+        while (!tryLoad(name, loader)) {
+            try {
+                Thread.sleep(delay);
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            delay = Math.min(2 * delay, MAX_RETRY_DELAY);
+        }
+    }
+
+    /**
+     * @return true if the component is loaded.
+     */
+    private boolean tryLoad(String name, Runnable loader) {
+        updateStatus(name, State.LOADING, null, null);
+        long time1 = System.currentTimeMillis();
+        try {
+            loader.run();
+            long duration = System.currentTimeMillis() - time1;
+            updateStatus(name, State.READY, duration, null);
+            logger.info("Warmed up " + name + " in " + duration + " ms.");
+            return true;
+        }
+        catch(Throwable e) { // Catch errors too so that the status is never left as LOADING
+            long duration = System.currentTimeMillis() - time1;
+            updateStatus(name, State.FAILED, duration, e.getMessage() == null ? e.getClass().getName() : e.getMessage());
+            logger.error("Cannot warm up " + name + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private synchronized void updateStatus(String name, State state, Long duration, String error) {
+        ComponentStatus status = nameToStatus.get(name);
+        status.setState(state);
+        status.setDuration(duration);
+        status.setError(error);
+    }
+
+    /**
+     * @return ready if warm-up has been started and all components are loaded, or warm-up is disabled.
+     */
+    public synchronized ReadinessStatus getReadinessStatus() {
+        ReadinessStatus rtn = new ReadinessStatus();
+        boolean ready = started;
+        List<ComponentStatus> components = new ArrayList<>();
+        for (ComponentStatus status : nameToStatus.values()) {
+            // Copy so that the status can be serialized outside of the lock
+            ComponentStatus copy = new ComponentStatus(status.getName());
+            copy.setState(status.getState());
+            copy.setDuration(status.getDuration());
+            copy.setError(status.getError());
+            components.add(copy);
+            if (status.getState() != State.READY)
+                ready = false;
+        }
+        rtn.setReady(ready);
+        rtn.setComponents(components);
+        return rtn;
+    }
+
+}
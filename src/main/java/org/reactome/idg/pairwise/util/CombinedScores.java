@@ -0,0 +1,277 @@
+package org.reactome.idg.pairwise.util;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.bson.types.Binary;
+
+/**
+ * Combined scores (PRD) of the interactors of one gene as parallel arrays of gene indices and float
+ * scores sorted by descending score, so that the interactors above any cutoff are a prefix found by
+ * binary search. Ties are ordered by gene index. Scores are stored under combined_score as a Binary:
+ * <pre>
+ * [format version: 1 byte][count: int32][gene index: int32]...[score: float32]...
+ * </pre>
+ * The original sub-document keyed by stringified gene indices is still decoded so that collections
+ * not migrated yet can be queried.
+ */
+public class CombinedScores {
+
+    public static final byte FORMAT_VERSION = 1;
+    // Version and count
+    private static final int INDEX_START = 1 + 4;
+
+    private final int[] indices;
+    private final float[] scores;
+
+    private CombinedScores(int[] indices, float[] scores) {
+        this.indices = indices;
+        this.scores = scores;
+    }
+
+    /**
+     * @param indexToScore gene indices to scores. null and NaN scores are ignored since they
+     * never pass a cutoff.
+     * @return
+     */
+    public static CombinedScores create(Map<Integer, ? extends Number> indexToScore) {
+        long[] packed = new long[indexToScore.size()];
+        int size = 0;
+        for (Map.Entry<Integer, ? extends Number> entry : indexToScore.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null || Float.isNaN(entry.getValue().floatValue()))
+                continue;
+            packed[size++] = pack(entry.getKey(), entry.getValue().floatValue());
+        }
+        packed = Arrays.copyOf(packed, size);
+        Arrays.sort(packed);
+        int[] indices = new int[size];
+        float[] scores = new float[size];
+        for (int i = 0; i < size; i++) {
+            indices[i] = (int) packed[i];
+            scores[i] = unpackScore(packed[i]);
+        }
+        return new CombinedScores(indices, scores);
+    }
+
+    /**
+     * Pack a score and an index into a long whose natural order is descending score and then
+     * ascending index. Negative scores, which may be found in legacy documents, are kept as they are.
+     */
+    private static long pack(int index, float score) {
+        int bits = Float.floatToIntBits(score + 0.0f); // Fold -0.0 into 0.0
+        // Flip the magnitude bits of negative floats so that keys are ordered as signed ints
+        int key = bits >= 0 ? bits : bits ^ Integer.MAX_VALUE;
+        return ((long) ~key << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    private static float unpackScore(long packed) {
+        int key = ~(int) (packed >> 32);
+        return Float.intBitsToFloat(key >= 0 ? key : key ^ Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decode a value stored under combined_score.
+     * @param value either a Binary in the sorted format or a legacy Document keyed by gene indices.
+     * @return null if the passed value is null.
+     */
+    public static CombinedScores decode(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof Binary)
+            return decode(((Binary) value).getData());
+        if (value instanceof Document) {
+            Map<Integer, Number> indexToScore = new HashMap<>();
+            for (Map.Entry<String, Object> entry : ((Document) value).entrySet()) {
+                if (!(entry.getValue() instanceof Number))
+                    continue;
+                try {
+                    indexToScore.put(Integer.parseInt(entry.getKey()), (Number) entry.getValue());
+                }
+                catch (NumberFormatException e) {
+                    continue; // e.g. "null" from an unmapped gene
+                }
+            }
+            return create(indexToScore);
+        }
+        throw new IllegalArgumentException("Unsupported combined_score value: " + value.getClass().getName());
+    }
+
+    public static CombinedScores decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        byte version = buffer.get();
+        if (version != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported combined_score format version: " + version);
+        int size = buffer.getInt();
+        int[] indices = new int[size];
+        buffer.asIntBuffer().get(indices);
+        buffer.position(buffer.position() + size * 4);
+        float[] scores = new float[size];
+        buffer.asFloatBuffer().get(scores);
+        return new CombinedScores(indices, scores);
+    }
+
+    /**
+     * Count the interactors above cutoff in a stored value. The binary format is searched in place
+     * without being decoded.
+     * @param value
+     * @param cutoff
+     * @return
+     */
+    public static int countAbove(Object value, double cutoff) {
+        if (value instanceof Binary) {
+            ByteBuffer buffer = wrap((Binary) value);
+            int size = buffer.getInt(1);
+            int scoreStart = getScoreStart(size);
+            float floatCutoff = (float) cutoff;
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (buffer.getFloat(scoreStart + mid * 4) > floatCutoff)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+        CombinedScores scores = decode(value);
+        return scores == null ? 0 : scores.countAbove(cutoff);
+    }
+
+    /**
+     * Decode the interactors between two positions in the descending order from a stored value.
+     * Only the requested range of the binary format is read.
+     * @param value
+     * @param from inclusive
+     * @param to exclusive. It is reduced to the number of interactors if it is larger.
+     * @return null if the passed value is null.
+     */
+    public static CombinedScores slice(Object value, int from, int to) {
+        if (value instanceof Binary) {
+            ByteBuffer buffer = wrap((Binary) value);
+            int size = buffer.getInt(1);
+            to = Math.min(to, size);
+            from = Math.min(from, to);
+            int[] indices = new int[to - from];
+            float[] scores = new float[to - from];
+            int scoreStart = getScoreStart(size);
+            for (int i = from; i < to; i++) {
+                indices[i - from] = buffer.getInt(INDEX_START + i * 4);
+                scores[i - from] = buffer.getFloat(scoreStart + i * 4);
+            }
+            return new CombinedScores(indices, scores);
+        }
+        CombinedScores scores = decode(value);
+        if (scores == null)
+            return null;
+        to = Math.min(to, scores.size());
+        from = Math.min(from, to);
+        return new CombinedScores(Arrays.copyOfRange(scores.indices, from, to),
+                                  Arrays.copyOfRange(scores.scores, from, to));
+    }
+
+    private static ByteBuffer wrap(Binary value) {
+        ByteBuffer buffer = ByteBuffer.wrap(value.getData());
+        if (buffer.get(0) != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unsupported combined_score format version: " + buffer.get(0));
+        return buffer;
+    }
+
+    private static int getScoreStart(int size) {
+        return INDEX_START + size * 4;
+    }
+
+    public static boolean isEncoded(Object value) {
+        return value instanceof Binary;
+    }
+
+    public Binary encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + indices.length * 8);
+        buffer.put(FORMAT_VERSION);
+        buffer.putInt(indices.length);
+        for (int index : indices)
+            buffer.putInt(index);
+        for (float score : scores)
+            buffer.putFloat(score);
+        return new Binary(buffer.array());
+    }
+
+    public int size() {
+        return indices.length;
+    }
+
+    /**
+     * @param i the position in the descending order
+     * @return
+     */
+    public int getIndex(int i) {
+        return indices[i];
+    }
+
+    public float getScore(int i) {
+        return scores[i];
+    }
+
+    /**
+     * @param i
+     * @return the score as the shortest double printing the same as the float, e.g. 0.7 instead
+     * of 0.699999988079071, for output.
+     */
+    public double getScoreAsDouble(int i) {
+        return Double.parseDouble(Float.toString(scores[i]));
+    }
+
+    /**
+     * @param cutoff
+     * @return the number of interactors having scores greater than cutoff, which are the first ones.
+     */
+    public int countAbove(double cutoff) {
+        // Compare as floats so that a score equal to the cutoff before rounding is not counted
+        float floatCutoff = (float) cutoff;
+        int low = 0;
+        int high = scores.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (scores[mid] > floatCutoff)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @param cutoff
+     * @return gene indices having scores greater than cutoff in descending order of scores.
+     */
+    public int[] getIndicesAbove(double cutoff) {
+        return Arrays.copyOf(indices, countAbove(cutoff));
+    }
+
+    /**
+     * Look up the score of one interactor by a linear scan. Use toScoreMap() for many lookups.
+     * @param geneIndex
+     * @return null if the gene is not an interactor.
+     */
+    public Double findScore(int geneIndex) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] == geneIndex)
+                return getScoreAsDouble(i);
+        }
+        return null;
+    }
+
+    /**
+     * @return gene indices to scores as returned by findScore().
+     */
+    public Map<Integer, Double> toScoreMap() {
+        Map<Integer, Double> rtn = new HashMap<>();
+        for (int i = 0; i < indices.length; i++)
+            rtn.put(indices[i], getScoreAsDouble(i));
+        return rtn;
+    }
+
+}
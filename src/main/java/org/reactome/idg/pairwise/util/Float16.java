@@ -0,0 +1,65 @@
+package org.reactome.idg.pairwise.util;
+
+/**
+ * Conversion between float and IEEE 754 half precision (binary16) stored in a short. Rounding is
+ * to the nearest value with ties to even. Half precision keeps 11 significant bits, which is about
+ * three decimal digits, and covers magnitudes up to 65504.
+ */
+public class Float16 {
+
+    private Float16() {
+    }
+
+    public static short fromFloat(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+        if (exponent == 0xFF) // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) // Too large
+            return (short) (sign | 0x7C00);
+        if (halfExponent <= 0) {
+            // A subnormal half or zero
+            if (halfExponent < -10)
+                return (short) sign;
+            mantissa |= 0x800000; // The implicit bit
+            int shift = 14 - halfExponent;
+            int rtn = mantissa >> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (rtn & 1) != 0))
+                rtn ++; // A carry into the exponent is still correct
+            return (short) (sign | rtn);
+        }
+        int rtn = sign | (halfExponent << 10) | (mantissa >> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (rtn & 1) != 0))
+            rtn ++; // A carry may round up to infinity, which is correct
+        return (short) rtn;
+    }
+
+    public static float toFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0) {
+            float value = mantissa * 0x1.0p-24f;
+            return sign == 0 ? value : -value;
+        }
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        return Float.intBitsToFloat(sign | ((exponent + 112) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * @param value
+     * @return the value after a round trip through half precision.
+     */
+    public static float round(float value) {
+        return toFloat(fromFloat(value));
+    }
+
+}
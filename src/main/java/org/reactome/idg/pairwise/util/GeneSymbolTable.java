@@ -0,0 +1,167 @@
+package org.reactome.idg.pairwise.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+/**
+ * An immutable two-way mapping between gene symbols and their indices in the GENE_INDEX collection.
+ * Index to symbol is a dense array. Symbol to index is an open-addressing hash table with linear
+ * probing so that neither direction boxes an Integer.
+ */
+public class GeneSymbolTable {
+    // Used in the index slots of the hash table for empty slots
+    private static final int EMPTY = -1;
+
+    // index -> symbol. null for an index not used.
+    private final String[] symbols;
+    // Hash table: slots keep indices into symbols
+    private final int[] slots;
+    private final int mask;
+    private final int symbolCount;
+
+    /**
+     * @param symbols symbols ordered by their indices. null is allowed for an unused index.
+     */
+    public GeneSymbolTable(String[] symbols) {
+        this.symbols = symbols.clone();
+        int count = 0;
+        for (String symbol : symbols) {
+            if (symbol != null)
+                count ++;
+        }
+        this.symbolCount = count;
+        // Keep the load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(count, 1) * 2 - 1) << 1;
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+        for (int i = 0; i < this.symbols.length; i++) {
+            String symbol = this.symbols[i];
+            if (symbol == null)
+                continue;
+            int slot = hash(symbol) & mask;
+            while (slots[slot] != EMPTY && !this.symbols[slots[slot]].equals(symbol))
+                slot = (slot + 1) & mask;
+            slots[slot] = i; // The last one wins for a duplicated symbol
+        }
+    }
+
+    /**
+     * Create a table from the single document in the GENE_INDEX collection, which has
+     * symbols as keys and indices as values.
+     * @param doc
+     * @return
+     */
+    public static GeneSymbolTable fromIndexDocument(Document doc) {
+        int max = -1;
+        if (doc != null) {
+            for (Object value : doc.values()) {
+                if (value instanceof Integer)
+                    max = Math.max(max, (Integer) value);
+            }
+        }
+        String[] symbols = new String[max + 1];
+        if (doc != null) {
+            for (Map.Entry<String, Object> entry : doc.entrySet()) {
+                if (entry.getValue() instanceof Integer)
+                    symbols[(Integer) entry.getValue()] = entry.getKey();
+            }
+        }
+        return new GeneSymbolTable(symbols);
+    }
+
+    private static int hash(String symbol) {
+        int h = symbol.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param index
+     * @return null if the index is not used.
+     */
+    public String getSymbol(int index) {
+        if (index < 0 || index >= symbols.length)
+            return null;
+        return symbols[index];
+    }
+
+    /**
+     * @param symbol
+     * @return -1 if the symbol is not in the table.
+     */
+    public int getIndex(String symbol) {
+        if (symbol == null)
+            return -1;
+        int slot = hash(symbol) & mask;
+        while (slots[slot] != EMPTY) {
+            int index = slots[slot];
+            if (symbols[index].equals(symbol))
+                return index;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean contains(String symbol) {
+        return getIndex(symbol) >= 0;
+    }
+
+    /**
+     * @return the largest index plus one.
+     */
+    public int length() {
+        return symbols.length;
+    }
+
+    /**
+     * @return the number of symbols in this table.
+     */
+    public int size() {
+        return symbolCount;
+    }
+
+    /**
+     * @return all symbols ordered by their indices.
+     */
+    public List<String> getSymbols() {
+        List<String> rtn = new ArrayList<>(symbolCount);
+        for (String symbol : symbols) {
+            if (symbol != null)
+                rtn.add(symbol);
+        }
+        return rtn;
+    }
+
+    /**
+     * GENE_INDEX is append-only, so a table saved earlier, e.g. in a relationship snapshot, is still
+     * valid if each of its indices refers to the same symbol in the current table.
+     * @param current
+     * @return the first index having a different symbol in current or -1 if there is none.
+     */
+    public int findMismatch(GeneSymbolTable current) {
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i] != null && !symbols[i].equals(current.getSymbol(i)))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return a boxed copy of this table for callers requiring a Map.
+     */
+    public Map<Integer, String> toIndexToSymbolMap() {
+        Map<Integer, String> rtn = new HashMap<>();
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i] != null)
+                rtn.put(i, symbols[i]);
+        }
+        return Collections.unmodifiableMap(rtn);
+    }
+
+}
@@ -0,0 +1,188 @@
+package org.reactome.idg.pairwise.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.bson.types.Binary;
+
+/**
+ * Encode and decode gene index lists stored under pos and neg in the relationships collection.
+ * Indices are sorted, de-duplicated and delta-encoded, and then each delta is packed as a
+ * varint (7 bits per byte, the high bit flags a following byte). The layout of the bytes is:
+ * <pre>
+ * [format version: 1 byte][count: varint][first index: varint][delta: varint]...
+ * </pre>
+ * so that the number of indices can be read from the header without decoding the list.
+ * The original BSON arrays of Integers are still supported by the methods taking an Object
+ * so that collections not migrated yet can be queried.
+ */
+public class RelationshipCodec {
+
+    public static final byte FORMAT_VERSION = 1;
+
+    private RelationshipCodec() {
+    }
+
+    public static Binary encode(Collection<Integer> indices) {
+        int[] values = new int[indices.size()];
+        int i = 0;
+        for (Integer index : indices)
+            values[i++] = index;
+        return encode(values);
+    }
+
+    /**
+     * Encode the passed indices. The passed array is not changed.
+     * @param indices
+     * @return
+     */
+    public static Binary encode(int[] indices) {
+        int[] sorted = Arrays.copyOf(indices, indices.length);
+        Arrays.sort(sorted);
+        // Remove duplicated indices, which are not meaningful for relationships
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] < 0)
+                throw new IllegalArgumentException("Gene index cannot be negative: " + sorted[i]);
+            if (size == 0 || sorted[size - 1] != sorted[i])
+                sorted[size++] = sorted[i];
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 2 + 6);
+        out.write(FORMAT_VERSION);
+        writeVarint(out, size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarint(out, sorted[i] - previous);
+            previous = sorted[i];
+        }
+        return new Binary(out.toByteArray());
+    }
+
+    /**
+     * Decode a value stored under pos or neg into a sorted array of distinct gene indices. A List is
+     * sorted and de-duplicated in the same way as encode() so that results don't change after migration.
+     * @param value either a Binary in the encoded format or a List of Integers.
+     * @return null if the passed value is null.
+     */
+    public static int[] decode(Object value) {
+        if (value == null)
+            return null;
+        if (value instanceof Binary)
+            return decode(((Binary)value).getData());
+        if (value instanceof List)
+            return decodeList((List<?>) value);
+        throw new IllegalArgumentException("Unknown relationship value type: " + value.getClass().getName());
+    }
+
+    private static int[] decodeList(List<?> list) {
+        int[] sorted = new int[list.size()];
+        int i = 0;
+        for (Object index : list)
+            sorted[i++] = (Integer) index;
+        Arrays.sort(sorted);
+        int size = 0;
+        for (i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i])
+                sorted[size++] = sorted[i];
+        }
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    public static int[] decode(byte[] data) {
+        checkVersion(data);
+        int[] position = {1};
+        int count = readVarint(data, position);
+        int[] rtn = new int[count];
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            previous += readVarint(data, position);
+            rtn[i] = previous;
+        }
+        return rtn;
+    }
+
+    /**
+     * Get the number of distinct indices in a value stored under pos or neg. Only the header
+     * is read for the encoded format.
+     * @param value
+     * @return 0 if the passed value is null.
+     */
+    public static int size(Object value) {
+        if (value == null)
+            return 0;
+        if (value instanceof Binary) {
+            byte[] data = ((Binary)value).getData();
+            checkVersion(data);
+            return readVarint(data, new int[]{1});
+        }
+        if (value instanceof List)
+            return decodeList((List<?>)value).length;
+        throw new IllegalArgumentException("Unknown relationship value type: " + value.getClass().getName());
+    }
+
+    /**
+     * Check if the passed index is in a value stored under pos or neg. Decoding stops
+     * as soon as a larger index is reached.
+     * @param value
+     * @param index
+     * @return
+     */
+    public static boolean contains(Object value, int index) {
+        if (value == null)
+            return false;
+        if (value instanceof List)
+            return ((List<?>)value).contains(index);
+        if (!(value instanceof Binary))
+            throw new IllegalArgumentException("Unknown relationship value type: " + value.getClass().getName());
+        byte[] data = ((Binary)value).getData();
+        checkVersion(data);
+        int[] position = {1};
+        int count = readVarint(data, position);
+        int current = 0;
+        for (int i = 0; i < count; i++) {
+            current += readVarint(data, position);
+            if (current == index)
+                return true;
+            if (current > index)
+                return false;
+        }
+        return false;
+    }
+
+    public static boolean isEncoded(Object value) {
+        return value instanceof Binary;
+    }
+
+    private static void checkVersion(byte[] data) {
+        if (data.length == 0 || data[0] != FORMAT_VERSION)
+            throw new IllegalStateException("Unsupported relationship encoding: " + (data.length == 0 ? "empty" : data[0]));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Read a varint starting at position[0] and move position[0] after it.
+     */
+    private static int readVarint(byte[] data, int[] position) {
+        int pos = position[0];
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[pos++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        position[0] = pos;
+        return value;
+    }
+
+}
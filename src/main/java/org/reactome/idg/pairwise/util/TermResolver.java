@@ -0,0 +1,182 @@
+package org.reactome.idg.pairwise.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Resolve query terms, which may be gene symbols or UniProt accessions, to gene symbols and back.
+ * The mapping between UniProt accessions and genes is many-to-many. The first mapping listed in
+ * the source file is used as the primary one. All lookups are hashed. Terms are matched exactly
+ * first, and then after case normalization. Isoform suffixes of UniProt accessions (e.g. P04637-2)
+ * are stripped.
+ * An instance is immutable after loading and can be shared across threads.
+ */
+public class TermResolver {
+    private static final Pattern ISOFORM_SUFFIX = Pattern.compile("-\\d+$");
+
+    // Canonical terms to their mapped terms in the order of the source file
+    private final Map<String, List<String>> uniprotToGenes;
+    private final Map<String, List<String>> geneToUniProts;
+    // Upper-cased terms to canonical terms
+    private final Map<String, String> upperToUniProt;
+    private final Map<String, String> upperToGene;
+    // One-to-one views for the old API
+    private final Map<String, String> uniprotToGene;
+    private final Map<String, String> geneToUniProt;
+
+    private TermResolver() {
+        uniprotToGenes = new HashMap<>();
+        geneToUniProts = new HashMap<>();
+        upperToUniProt = new HashMap<>();
+        upperToGene = new HashMap<>();
+        uniprotToGene = new LinkedHashMap<>();
+        geneToUniProt = new LinkedHashMap<>();
+    }
+
+    /**
+     * Load a tab-delimited file having UniProt accessions in the first column and gene symbols
+     * in the second column. The first line is a header.
+     * @param is
+     * @return
+     * @throws IOException
+     */
+    public static TermResolver load(InputStream is) throws IOException {
+        TermResolver resolver = new TermResolver();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line = reader.readLine(); // Escape the header
+            while ((line = reader.readLine()) != null) {
+                String[] tokens = line.split("\t");
+                if (tokens.length < 2 || tokens[0].length() == 0 || tokens[1].length() == 0)
+                    continue;
+                resolver.addMapping(tokens[0].trim(), tokens[1].trim());
+            }
+        }
+        return resolver;
+    }
+
+    private void addMapping(String uniprot, String gene) {
+        addTo(uniprotToGenes, uniprot, gene);
+        addTo(geneToUniProts, gene, uniprot);
+        upperToUniProt.putIfAbsent(uniprot.toUpperCase(Locale.ROOT), uniprot);
+        upperToGene.putIfAbsent(gene.toUpperCase(Locale.ROOT), gene);
+        uniprotToGene.putIfAbsent(uniprot, gene);
+        geneToUniProt.putIfAbsent(gene, uniprot);
+    }
+
+    private void addTo(Map<String, List<String>> map, String key, String value) {
+        List<String> list = map.computeIfAbsent(key, k -> new ArrayList<>(1));
+        if (!list.contains(value))
+            list.add(value);
+    }
+
+    /**
+     * @param term a gene symbol or a UniProt accession
+     * @return the gene symbol for the passed term or null if the term cannot be resolved.
+     */
+    public String resolveGene(String term) {
+        String gene = normalizeGene(term);
+        if (gene != null)
+            return gene;
+        return getGene(term);
+    }
+
+    /**
+     * @param term
+     * @return the gene symbol as listed in the source file or null if term is not a known gene.
+     */
+    public String normalizeGene(String term) {
+        if (term == null)
+            return null;
+        if (geneToUniProts.containsKey(term))
+            return term;
+        return upperToGene.get(term.trim().toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @param term
+     * @return the accession without isoform suffix as listed in the source file or null if term is
+     * not a known UniProt accession.
+     */
+    public String normalizeUniProt(String term) {
+        if (term == null)
+            return null;
+        if (uniprotToGenes.containsKey(term))
+            return term;
+        String upper = ISOFORM_SUFFIX.matcher(term.trim()).replaceFirst("").toUpperCase(Locale.ROOT);
+        return upperToUniProt.get(upper);
+    }
+
+    public boolean isGene(String term) {
+        return normalizeGene(term) != null;
+    }
+
+    public boolean isUniProt(String term) {
+        return normalizeUniProt(term) != null;
+    }
+
+    /**
+     * @param uniprot
+     * @return the primary gene for the passed UniProt accession or null.
+     */
+    public String getGene(String uniprot) {
+        List<String> genes = getGenes(uniprot);
+        return genes.isEmpty() ? null : genes.get(0);
+    }
+
+    /**
+     * @param uniprot
+     * @return all genes mapped to the passed UniProt accession. The primary one is the first.
+     */
+    public List<String> getGenes(String uniprot) {
+        String normalized = normalizeUniProt(uniprot);
+        if (normalized == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(uniprotToGenes.get(normalized));
+    }
+
+    /**
+     * @param gene
+     * @return the primary UniProt accession for the passed gene or null.
+     */
+    public String getUniProt(String gene) {
+        List<String> uniprots = getUniProts(gene);
+        return uniprots.isEmpty() ? null : uniprots.get(0);
+    }
+
+    /**
+     * @param gene
+     * @return all UniProt accessions mapped to the passed gene. The primary one is the first.
+     */
+    public List<String> getUniProts(String gene) {
+        String normalized = normalizeGene(gene);
+        if (normalized == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(geneToUniProts.get(normalized));
+    }
+
+    /**
+     * @return a read-only one-to-one map using the primary mapping of each accession.
+     */
+    public Map<String, String> getUniProtToGene() {
+        return Collections.unmodifiableMap(uniprotToGene);
+    }
+
+    /**
+     * @return a read-only one-to-one map using the primary mapping of each gene.
+     */
+    public Map<String, String> getGeneToUniProt() {
+        return Collections.unmodifiableMap(geneToUniProt);
+    }
+
+}
@@ -0,0 +1,144 @@
+package org.reactome.idg.pairwise.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe LRU cache bounded by the total weight (e.g. estimated bytes) of its values instead of
+ * the number of entries. Least recently accessed entries are evicted until the total weight fits in
+ * the budget. A value heavier than the whole budget is not cached. Hits, misses and evictions are counted.
+ */
+public class WeightedLruCache<K, V> {
+    private final LinkedHashMap<K, Entry<V>> map;
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private long weight;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    private static class Entry<V> {
+        private final V value;
+        private final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * @param maxWeight the budget. 0 or less disables caching.
+     * @param weigher
+     */
+    public WeightedLruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.map = new LinkedHashMap<>(16, 0.75f, true); // Access order
+    }
+
+    /**
+     * @param key
+     * @return null if the key is not cached.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = map.get(key);
+        if (entry == null) {
+            missCount ++;
+            return null;
+        }
+        hitCount ++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (value == null)
+            return;
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > maxWeight) {
+            invalidate(key); // Don't keep a stale value
+            return;
+        }
+        Entry<V> old = map.put(key, new Entry<>(value, valueWeight));
+        if (old != null)
+            weight -= old.weight;
+        weight += valueWeight;
+        Iterator<Entry<V>> it = map.values().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Entry<V> eldest = it.next();
+            it.remove();
+            weight -= eldest.weight;
+            evictionCount ++;
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        Entry<V> old = map.remove(key);
+        if (old != null)
+            weight -= old.weight;
+    }
+
+    /**
+     * Remove all entries having keys accepted by the passed filter.
+     * @param filter
+     */
+    public synchronized void invalidateIf(Predicate<K> filter) {
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if (filter.test(entry.getKey())) {
+                it.remove();
+                weight -= entry.getValue().weight;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return the counters and the current size and weight in a map for reporting.
+     */
+    public synchronized Map<String, Number> getStats() {
+        Map<String, Number> rtn = new LinkedHashMap<>();
+        rtn.put("size", map.size());
+        rtn.put("weight", weight);
+        rtn.put("maxWeight", maxWeight);
+        rtn.put("hitCount", hitCount);
+        rtn.put("missCount", missCount);
+        rtn.put("evictionCount", evictionCount);
+        long requests = hitCount + missCount;
+        rtn.put("hitRate", requests == 0 ? 0.0d : (double) hitCount / requests);
+        return rtn;
+    }
+
+}
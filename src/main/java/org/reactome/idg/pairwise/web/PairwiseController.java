@@ -1,8 +1,11 @@
 package org.reactome.idg.pairwise.web;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -10,7 +13,10 @@ import java.util.Set;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
 
+import org.reactome.idg.pairwise.model.CombinedScoreGenesRequest;
+import org.reactome.idg.pairwise.model.CombinedScorePage;
 import org.reactome.idg.pairwise.model.DataDesc;
+import org.reactome.idg.pairwise.model.EnrichmentHeatmap;
 import org.reactome.idg.pairwise.model.FeatureForTermInteractorsWrapper;
 import org.reactome.idg.pairwise.model.GeneToPathwaysRequestWrapper;
 import org.reactome.idg.pairwise.model.PEsForInteractorAndDataDescsWrapper;
@@ -18,10 +24,19 @@ import org.reactome.idg.pairwise.model.PEsForInteractorResponse;
 import org.reactome.idg.pairwise.model.PairwiseRelRequest;
 import org.reactome.idg.pairwise.model.PairwiseRelationship;
 import org.reactome.idg.pairwise.model.Pathway;
+import org.reactome.idg.pairwise.model.PathwayNetworkRequest;
+import org.reactome.idg.pairwise.model.PrdEnrichment;
+import org.reactome.idg.pairwise.model.PrdHistogram;
+import org.reactome.idg.pairwise.model.PrdSweepRequest;
+import org.reactome.idg.pairwise.model.ReadinessStatus;
 import org.reactome.idg.pairwise.model.network.Element;
+import org.reactome.idg.pairwise.model.network.PathwayNetwork;
 import org.reactome.idg.pairwise.model.pathway.GraphPathway;
 import org.reactome.idg.pairwise.model.pathway.HierarchyResponseWrapper;
 import org.reactome.idg.pairwise.service.PairwiseService;
+import org.reactome.idg.pairwise.service.WarmUpService;
+import org.reactome.idg.pairwise.web.errors.BadRequestException;
+import org.reactome.idg.pairwise.web.errors.ForbiddenException;
 import org.reactome.idg.pairwise.web.errors.InternalServerError;
 import org.reactome.idg.pairwise.web.errors.ResourceNotFoundException;
 import org.slf4j.Logger;
@@ -32,6 +47,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 /**
@@ -46,11 +63,23 @@ public class PairwiseController {
     @Autowired
     private PairwiseService pairwiseService;
     
+    @Autowired
+    private WarmUpService warmUpService;
+    
     private static final Logger logger = LoggerFactory.getLogger(PairwiseService.class);
     
     public PairwiseController() {
     }
     
+    private void checkAdminToken(String token) {
+        String adminToken = pairwiseService.getServiceConfig().getAdminToken();
+        if (adminToken == null || adminToken.trim().length() == 0)
+            throw new ForbiddenException("Admin operations are disabled.");
+        if (token == null || !MessageDigest.isEqual(adminToken.trim().getBytes(StandardCharsets.UTF_8),
+                                                    token.getBytes(StandardCharsets.UTF_8)))
+            throw new ForbiddenException("Invalid admin token.");
+    }
+    
     @GetMapping("uniprot2gene")
     public String getUniProtToGene() {
         Map<String, String> uniprotToGene = pairwiseService.getUniProtToGene();
@@ -98,6 +127,63 @@ public class PairwiseController {
         return pairwiseService.queryRelsForProteins(wrap.getGenes(), wrap.getDataDescs(), numberOnly);
     }
     
+    /**
+     * The same as /pairwise/genes/{numberOnly} except that the JSON is written while relationships
+     * are read. Use this for large gene lists.
+     * @param numberOnly
+     * @param wrap
+     * @param response
+     */
+    @PostMapping("/pairwise/genes/{numberOnly}/stream")
+    public void streamRelationshipsForGenes(@PathVariable("numberOnly") Boolean numberOnly,
+                                            @RequestBody PairwiseRelRequest wrap,
+                                            HttpServletResponse response) {
+        streamRelationships(numberOnly, wrap, response, false);
+    }
+    
+    /**
+     * The streaming version of /pairwise/uniprots/{numberOnly}.
+     * @param numberOnly
+     * @param wrap
+     * @param response
+     */
+    @PostMapping("/pairwise/uniprots/{numberOnly}/stream")
+    public void streamRelationshipsForProteins(@PathVariable("numberOnly") Boolean numberOnly,
+                                               @RequestBody PairwiseRelRequest wrap,
+                                               HttpServletResponse response) {
+        streamRelationships(numberOnly, wrap, response, true);
+    }
+    
+    private void streamRelationships(Boolean numberOnly,
+                                     PairwiseRelRequest wrap,
+                                     HttpServletResponse response,
+                                     boolean isProtein) {
+        response.setContentType("application/json");
+        try {
+            ServletOutputStream os = response.getOutputStream();
+            if (wrap.getDataDescs() == null || wrap.getGenes() == null)
+                os.print("[]"); // Nothing to return
+            else if (isProtein)
+                pairwiseService.streamRelsForProteins(wrap.getGenes(), wrap.getDataDescs(), numberOnly, os);
+            else
+                pairwiseService.streamRelsForGenes(wrap.getGenes(), wrap.getDataDescs(), numberOnly, os);
+            os.flush();
+        }
+        // After the response is committed, an error status cannot be sent any more. The array is left
+        // unterminated so that the client sees a failure.
+        catch(IOException e) {
+            logger.error(e.getMessage(), e);
+            if (response.isCommitted())
+                return;
+            throw new InternalServerError("We experienced an error and are working to fix it!");
+        }
+        catch(RuntimeException e) {
+            if (!response.isCommitted())
+                throw e;
+            logger.error(e.getMessage(), e);
+        }
+    }
+    
     /**
      * Only one term (a gene or UniProt) should be used as an input to genes 
      * @param wrap
@@ -112,6 +198,69 @@ public class PairwiseController {
         return pairwiseService.queryRelsForTerm(term, wrap.getDataDescs(), numberOnly);
     }
     
+    /**
+     * Query a list of terms (genes or UniProt ids) in one call. The number of terms is limited
+     * by pairwise.batch.max.terms.
+     * @param wrap
+     * @return a map from each term to its relationships
+     */
+    @PostMapping("/pairwise/terms/{numberOnly}")
+    public Map<String, List<PairwiseRelationship>> queryRelationshipsForTerms(@PathVariable("numberOnly") Boolean numberOnly,
+                                                                              @RequestBody PairwiseRelRequest wrap) {
+        if (wrap.getDataDescs() == null || wrap.getGenes() == null)
+            return new HashMap<>(); // Nothing to return
+        return pairwiseService.queryRelsForTerms(wrap.getGenes(), wrap.getDataDescs(), numberOnly);
+    }
+    
+    /**
+     * @return hit, miss and eviction counters of the relationship document cache.
+     */
+    @GetMapping("/pairwise/cache/stats")
+    public Map<String, Number> getRelationshipCacheStats() {
+        return pairwiseService.getRelationshipCacheStats();
+    }
+    
+    /**
+     * Clear the relationship document cache after the relationships collection is reloaded. This is
+     * an admin operation requiring the configured token.
+     */
+    @PostMapping("/pairwise/cache/clear")
+    public Map<String, Number> clearRelationshipCache(@RequestHeader(value = "X-Admin-Token", required = false) String token) {
+        checkAdminToken(token);
+        pairwiseService.invalidateRelationshipCache();
+        return pairwiseService.getRelationshipCacheStats();
+    }
+    
+    /**
+     * @return hit, miss and eviction counters of cached enrichment results.
+     */
+    @GetMapping("/pairwise/cache/enrichment/stats")
+    public Map<String, Number> getEnrichmentCacheStats() {
+        return pairwiseService.getEnrichmentCacheStats();
+    }
+    
+    /**
+     * Report whether reference data has been warmed up so that a load balancer can hold traffic
+     * until it is done. 503 is returned before that.
+     * @param response
+     * @return load status and duration of each component
+     */
+    @GetMapping("/health/ready")
+    public ReadinessStatus getReadiness(HttpServletResponse response) {
+        ReadinessStatus status = warmUpService.getReadinessStatus();
+        if (!status.isReady())
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return status;
+    }
+    
+    /**
+     * @return hit, miss and eviction counters of cached network layouts.
+     */
+    @GetMapping("/pairwise/cache/layout/stats")
+    public Map<String, Number> getNetworkLayoutCacheStats() {
+        return pairwiseService.getNetworkLayoutCacheStats();
+    }
+    
     @CrossOrigin
     @GetMapping("/relationships/genesForPathway/{stId}")
     public Pathway queryPathwayToGeneRelationship(@PathVariable("stId") String stId) {
@@ -226,11 +375,32 @@ public class PairwiseController {
     
     @CrossOrigin
     @PostMapping(path="/relationships/network/enrichedSecondaryPathaysForTerm")
-    public List<Element> enrichedNetworkPathwaysForTerm(@RequestBody GeneToPathwaysRequestWrapper request){
+    public List<Element> enrichedNetworkPathwaysForTerm(@RequestBody PathwayNetworkRequest request){
     	if(request == null || request.getTerm() == null) return Collections.emptyList();
     	return pairwiseService.queryTermToSecondaryPathwaysNetworkWithEnrichment(request.getTerm(),
     																			 request.getDataDescKeys(),
-    																			 request.getPrd() != null ? request.getPrd() : 0.9d);
+    																			 request.getPrd() != null ? request.getPrd() : 0.9d,
+    																			 Boolean.TRUE.equals(request.getLayout()));
+    }
+    
+    /**
+     * The network of enriched pathways pruned by the limits in the request, together with the numbers of
+     * nodes and edges before pruning.
+     * @param request
+     * @return
+     */
+    @CrossOrigin
+    @PostMapping(path="/relationships/network/enrichedSecondaryPathaysForTerm/pruned")
+    public PathwayNetwork prunedNetworkPathwaysForTerm(@RequestBody PathwayNetworkRequest request){
+    	if(request == null || request.getTerm() == null)
+    		throw new BadRequestException("request must include a term");
+    	return pairwiseService.queryPrunedPathwayNetwork(request.getTerm(),
+    													 request.getDataDescKeys(),
+    													 request.getPrd() != null ? request.getPrd() : 0.9d,
+    													 request.getMaxNodes(),
+    													 request.getMaxEdgesPerNode(),
+    													 request.getMaxHypergeometricScore(),
+    													 Boolean.TRUE.equals(request.getLayout()));
     }
     
     @CrossOrigin
@@ -279,6 +449,61 @@ public class PairwiseController {
     	return pairwiseService.queryEnrichedPathwaysForCombinedScore(request.getTerm(), request.getPrd());
     }
     
+    /**
+     * Enrich a gene set of gene symbols and/or UniProt accessions against Reactome pathways. The result
+     * is streamed as an object having the mapped gene number, unmapped terms and enriched pathways.
+     * @param terms
+     * @param response
+     */
+    @CrossOrigin
+    @PostMapping("/relationships/enrichGeneSet")
+    public void enrichGeneSet(@RequestBody List<String> terms, HttpServletResponse response) {
+    	response.setContentType("application/json");
+    	try {
+    		ServletOutputStream os = response.getOutputStream();
+    		pairwiseService.streamGeneSetEnrichment(terms == null ? new ArrayList<>() : terms, os);
+    		os.flush();
+    	}
+    	catch(IOException e) {
+    		logger.error(e.getMessage(), e);
+    		throw new InternalServerError("We experienced an error and are working to fix it!");
+    	}
+    }
+    
+    /**
+     * Gets p-values and FDRs of enriched pathways for the interactors of a term in each of the passed
+     * data descriptions as a DataDesc x pathway matrix. All data descriptions of the term are used
+     * if none is passed in.
+     * @param request
+     * @return
+     */
+    @CrossOrigin
+    @PostMapping("/relationships/enrichmentHeatmapForTerm")
+    public EnrichmentHeatmap queryEnrichmentHeatmapForTerm(@RequestBody GeneToPathwaysRequestWrapper request){
+    	if(request.getTerm() == null)
+    		throw new BadRequestException("request must include a term");
+    	EnrichmentHeatmap rtn = pairwiseService.queryEnrichmentHeatmapForTerm(request.getTerm(), request.getDataDescKeys());
+    	if(rtn == null)
+    		throw new ResourceNotFoundException("No relationships for " + request.getTerm());
+    	return rtn;
+    }
+    
+    /**
+     * Gets combined score pathways for a term at each of the passed PRD cutoffs in one call.
+     * @param request
+     * @return
+     */
+    @CrossOrigin
+    @PostMapping("/relationships/combinedScoreForTerm/cutoffs")
+    public List<PrdEnrichment> queryEnrichedPathwaysForCombinedScoreCutoffs(@RequestBody PrdSweepRequest request){
+    	if(request.getTerm() == null || request.getPrds() == null || request.getPrds().isEmpty())
+    		throw new BadRequestException("request must include a term and cutoff values");
+    	List<PrdEnrichment> rtn = pairwiseService.queryEnrichedPathwaysForCombinedScoreCutoffs(request.getTerm(), request.getPrds());
+    	if(rtn == null)
+    		throw new ResourceNotFoundException("No combined score for " + request.getTerm());
+    	return rtn;
+    }
+    
     @CrossOrigin
     @PostMapping("/relationships/dataDescsForKeys")
     public List<String> queryDataDescsForKeys(@RequestBody List<Integer> request){
@@ -296,6 +521,49 @@ public class PairwiseController {
 		return pairwiseService.queryCombinedScoreGenesForTerm(term);
 	}
     
+    /**
+     * For a passed in term, return the numbers of combined score interactors above fixed PRD cutoffs.
+     * @param term
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping("/relationships/prdHistogramForTerm/{term}")
+    public PrdHistogram queryPrdHistogramForTerm(@PathVariable("term") String term) {
+        return pairwiseService.queryPrdHistogramForTerm(term);
+    }
+    
+    /**
+     * Return genes having combined scores greater than prd with any of the passed terms, and their
+     * highest scores. When the combined score matrix is configured, scores are returned in half
+     * precision (about three significant digits) and prd is rounded the same way before comparison.
+     * @param request
+     * @return
+     */
+    @CrossOrigin
+    @PostMapping("/relationships/combinedScoreGenesForTerms")
+    public Map<String, Double> queryCombinedScoreGenesForTerms(@RequestBody CombinedScoreGenesRequest request) {
+        if (request.getTerms() == null || request.getTerms().isEmpty())
+            return new HashMap<>();
+        return pairwiseService.queryCombinedScoreGenesForTerms(request.getTerms(), request.getPrd());
+    }
+    
+    /**
+     * For a passed in term, return a page of the interactors having the highest combined scores.
+     * @param term
+     * @param offset
+     * @param limit
+     * @param minScore optional. Only interactors having higher scores are returned.
+     * @return
+     */
+    @CrossOrigin
+    @GetMapping("/relationships/topCombinedScoreGenesForTerm/{term}")
+    public CombinedScorePage queryTopCombinedScoreGenesForTerm(@PathVariable("term") String term,
+                                                               @RequestParam(name = "offset", defaultValue = "0") int offset,
+                                                               @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                               @RequestParam(name = "minScore", required = false) Double minScore) {
+        return pairwiseService.queryTopCombinedScoreGenesForTerm(term, offset, limit, minScore);
+    }
+    
     @CrossOrigin
     @PostMapping("/download/FeaturesForTermAndInteractors")
     public void queryFeaturesForTermAndInteractors(@RequestBody FeatureForTermInteractorsWrapper request, HttpServletResponse response) {
@@ -0,0 +1,24 @@
+package org.reactome.idg.pairwise.web;
+
+import org.reactome.idg.pairwise.service.WarmUpService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Start warming up reference data when the web application context is ready. This is in the web
+ * package so that applications using MainAppConfig only, e.g. MainApp, don't warm up.
+ */
+@Component
+public class WarmUpListener {
+	
+	@Autowired
+	private WarmUpService warmUpService;
+	
+	@EventListener
+	public void onContextRefreshed(ContextRefreshedEvent event) {
+		warmUpService.start();
+	}
+
+}
@@ -0,0 +1,18 @@
+package org.reactome.idg.pairwise.web.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a request cannot be served as sent, e.g. too many query terms.
+ */
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class BadRequestException extends RuntimeException{
+
+	private static final long serialVersionUID = -4529740185622134079L;
+
+	public BadRequestException(String message) {
+		super(message);
+	}
+	
+}
@@ -0,0 +1,21 @@
+package org.reactome.idg.pairwise.web.errors;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when an admin operation is called without the configured admin token.
+ */
+@ResponseStatus(value = HttpStatus.FORBIDDEN)
+public class ForbiddenException extends RuntimeException{
+
+	/**
+	 * needed when extending RuntimeException
+	 */
+	private static final long serialVersionUID = -3190584113937462817L;
+
+	public ForbiddenException(String message) {
+		super(message);
+	}
+	
+}
@@ -0,0 +1,94 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.CombinedScores;
+
+public class CombinedScoresTests {
+
+    @Test
+    public void testCutoff() {
+        Map<Integer, Double> indexToScore = new HashMap<>();
+        indexToScore.put(3, 0.2d);
+        indexToScore.put(1, 0.9d);
+        indexToScore.put(7, 0.5d);
+        indexToScore.put(2, 0.8d);
+        indexToScore.put(5, 0.8d);
+        CombinedScores scores = CombinedScores.create(indexToScore);
+        assertArrayEquals(new int[] {1, 2, 5, 7, 3}, scores.getIndicesAbove(-1.0d));
+        assertArrayEquals(new int[] {1, 2, 5}, scores.getIndicesAbove(0.5d));
+        // Equal scores are not above the cutoff
+        assertArrayEquals(new int[] {1}, scores.getIndicesAbove(0.8d));
+        assertEquals(0, scores.countAbove(0.9d));
+        assertEquals(0.8d, scores.findScore(5), 0.0d);
+        assertNull(scores.findScore(4));
+        assertEquals(scores.findScore(7), scores.toScoreMap().get(7));
+        assertNull(scores.toScoreMap().get(4));
+    }
+
+    @Test
+    public void testEncoding() {
+        // Legacy sub-document keyed by gene indices
+        Document doc = new Document("10", 0.75d)
+                .append("4", 0.95d)
+                .append("null", 0.5d)
+                .append("8", 0.1d);
+        CombinedScores scores = CombinedScores.decode(doc);
+        assertEquals(3, scores.size());
+        CombinedScores decoded = CombinedScores.decode(scores.encode());
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < scores.size(); i++) {
+            assertEquals(scores.getIndex(i), decoded.getIndex(i));
+            assertEquals(scores.getScore(i), decoded.getScore(i), 0.0f);
+        }
+        assertArrayEquals(new int[] {4, 10}, decoded.getIndicesAbove(0.5d));
+        assertEquals(0.75d, decoded.getScoreAsDouble(1), 0.0d);
+    }
+
+    @Test
+    public void testNegativeScores() {
+        // Legacy documents may have negative scores, which are kept
+        Document doc = new Document("1", -0.5d)
+                .append("2", 0.3d)
+                .append("3", -0.0d)
+                .append("4", -2.0d)
+                .append("5", 0.0d);
+        CombinedScores scores = CombinedScores.decode(doc);
+        assertArrayEquals(new int[] {2, 3, 5, 1, 4}, scores.getIndicesAbove(Double.NEGATIVE_INFINITY));
+        assertEquals(-0.5f, scores.getScore(3), 0.0f);
+        assertEquals(-2.0f, scores.getScore(4), 0.0f);
+        assertEquals(0.0f, scores.getScore(1), 0.0f);
+        assertArrayEquals(new int[] {2, 3, 5, 1}, scores.getIndicesAbove(-1.0d));
+        assertArrayEquals(new int[] {2}, scores.getIndicesAbove(0.0d));
+        assertEquals(-0.5d, scores.findScore(1), 0.0d);
+        assertEquals(-2.0d, scores.toScoreMap().get(4), 0.0d);
+        CombinedScores decoded = CombinedScores.decode(scores.encode());
+        assertEquals(4, decoded.countAbove(-1.0d));
+    }
+
+    @Test
+    public void testSlice() {
+        Map<Integer, Double> indexToScore = new HashMap<>();
+        for (int i = 0; i < 100; i++)
+            indexToScore.put(i, i / 100.0d);
+        CombinedScores scores = CombinedScores.create(indexToScore);
+        Object stored = scores.encode();
+        assertEquals(scores.countAbove(0.5d), CombinedScores.countAbove(stored, 0.5d));
+        assertEquals(100, CombinedScores.countAbove(stored, Double.NEGATIVE_INFINITY));
+        CombinedScores page = CombinedScores.slice(stored, 10, 15);
+        assertEquals(5, page.size());
+        for (int i = 0; i < page.size(); i++)
+            assertEquals(89 - i, page.getIndex(i));
+        assertEquals(0, CombinedScores.slice(stored, 120, 130).size());
+        // Legacy documents are decoded before slicing
+        assertEquals(1, CombinedScores.slice(new Document("1", 0.5d).append("2", 0.1d), 0, 1).getIndex(0));
+    }
+
+}
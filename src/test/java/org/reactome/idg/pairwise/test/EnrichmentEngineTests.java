@@ -0,0 +1,190 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.math3.distribution.BinomialDistribution;
+import org.junit.Test;
+import org.reactome.annotate.GeneSetAnnotation;
+import org.reactome.annotate.PathwayBasedAnnotator;
+import org.reactome.idg.pairwise.service.EnrichmentEngine;
+
+public class EnrichmentEngineTests {
+
+    @Test
+    public void testAnnotate() {
+        Random random = new Random(17);
+        Map<String, Set<String>> geneToPathways = new HashMap<>();
+        Map<String, Integer> pathwayToSize = new HashMap<>();
+        for (int i = 0; i < 500; i++) {
+            Set<String> pathways = new HashSet<>();
+            for (int j = 0; j < 40; j++) {
+                if (random.nextInt(8) == 0) {
+                    pathways.add("R-HSA-" + j);
+                    pathwayToSize.merge("R-HSA-" + j, 1, Integer::sum);
+                }
+            }
+            geneToPathways.put("G" + i, pathways);
+        }
+        EnrichmentEngine engine = new EnrichmentEngine(geneToPathways);
+        assertEquals(500, engine.getUniverseSize());
+
+        List<String> query = new ArrayList<>();
+        for (int i = 0; i < 60; i++)
+            query.add("G" + random.nextInt(500));
+        query.add("UNKNOWN");
+        List<GeneSetAnnotation> annotations = engine.annotate(query);
+        int n = (int) query.stream().filter(gene -> geneToPathways.containsKey(gene) && geneToPathways.get(gene).size() > 0).count();
+
+        double[] pValues = new double[annotations.size()];
+        for (int i = 0; i < annotations.size(); i++) {
+            GeneSetAnnotation annotation = annotations.get(i);
+            int hits = (int) query.stream().filter(gene -> geneToPathways.containsKey(gene) && geneToPathways.get(gene).contains(annotation.getTopic())).count();
+            assertEquals(hits, annotation.getHitNumber().intValue());
+            int size = pathwayToSize.get(annotation.getTopic());
+            assertEquals(size, annotation.getNumberInTopic().intValue());
+            double expected = calculateUpperTail(n, size / 500.0d, hits);
+            assertEquals(expected, annotation.getPValue(), expected * 1.0e-9);
+            pValues[i] = annotation.getPValue();
+            if (i > 0)
+                assertTrue(pValues[i - 1] <= pValues[i]);
+        }
+        // Benjamini-Hochberg with the integer scale used by the annotator
+        for (int i = pValues.length - 1; i >= 0; i--) {
+            double expected = pValues[i];
+            if (i < pValues.length - 1)
+                expected = Math.min(pValues[i] * (pValues.length / (i + 1)), Double.parseDouble(annotations.get(i + 1).getFdr()));
+            assertEquals(expected, Double.parseDouble(annotations.get(i).getFdr()), 0.0d);
+        }
+    }
+
+    /**
+     * P(X >= k) summed from the smallest term up so that small p-values keep their precision.
+     */
+    private double calculateUpperTail(int n, double p, int k) {
+        BinomialDistribution distribution = new BinomialDistribution(n, p);
+        double rtn = 0.0d;
+        for (int i = n; i >= k; i--)
+            rtn += distribution.probability(i);
+        return rtn;
+    }
+
+    @Test
+    public void testSmallPValues() {
+        // A pathway having 1 of 100 genes so that its ratio is 0.01. Other genes are in another pathway.
+        Map<String, Set<String>> geneToPathways = new HashMap<>();
+        geneToPathways.put("G0", new HashSet<>(Arrays.asList("R-HSA-1")));
+        for (int i = 1; i < 100; i++)
+            geneToPathways.put("G" + i, new HashSet<>(Arrays.asList("R-HSA-2")));
+        EnrichmentEngine engine = new EnrichmentEngine(geneToPathways);
+        int[][] cases = {{1000, 60}, {2000, 80}, {2000, 120}, {1000, 40}, {1000, 1}};
+        for (int[] nk : cases) {
+            // Genes listed more than once are counted more than once
+            List<String> query = new ArrayList<>();
+            for (int i = 0; i < nk[0]; i++)
+                query.add(i < nk[1] ? "G0" : "G" + (1 + i % 99));
+            GeneSetAnnotation annotation = engine.annotate(query).stream()
+                    .filter(a -> a.getTopic().equals("R-HSA-1"))
+                    .findFirst()
+                    .get();
+            assertEquals(nk[1], annotation.getHitNumber().intValue());
+            double expected = calculateUpperTail(nk[0], 0.01d, nk[1]);
+            assertTrue(annotation.getPValue() > 0.0d);
+            assertEquals(expected, annotation.getPValue(), expected * 1.0e-9);
+        }
+    }
+
+    /**
+     * The engine should give the same annotations as PathwayBasedAnnotator. The annotator calculates
+     * 1 - P(X <= k - 1), so p-values are compared with an absolute tolerance.
+     */
+    @Test
+    public void testParityWithAnnotator() throws Exception {
+        Random random = new Random(31);
+        Map<String, Set<String>> geneToPathways = new HashMap<>();
+        for (int i = 0; i < 400; i++) {
+            Set<String> pathways = new HashSet<>();
+            for (int j = 0; j < 50; j++) {
+                if (random.nextInt(10) == 0)
+                    pathways.add("R-HSA-" + j);
+            }
+            geneToPathways.put("G" + i, pathways);
+        }
+        List<String> query = new ArrayList<>();
+        for (int i = 0; i < 80; i++)
+            query.add("G" + random.nextInt(420)); // Some are unknown
+        List<GeneSetAnnotation> expected = new PathwayBasedAnnotator().annotateGeneSet(query, geneToPathways);
+        List<GeneSetAnnotation> actual = new EnrichmentEngine(geneToPathways).annotate(query);
+        assertEquals(expected.size(), actual.size());
+        Map<String, GeneSetAnnotation> topicToActual = new HashMap<>();
+        for (GeneSetAnnotation annotation : actual)
+            topicToActual.put(annotation.getTopic(), annotation);
+        for (GeneSetAnnotation annotation : expected) {
+            GeneSetAnnotation found = topicToActual.get(annotation.getTopic());
+            assertEquals(annotation.getHitNumber(), found.getHitNumber());
+            assertEquals(annotation.getNumberInTopic(), found.getNumberInTopic());
+            assertEquals(annotation.getRatioOfTopic(), found.getRatioOfTopic(), 0.0d);
+            assertEquals(annotation.getPValue(), found.getPValue(), 1.0e-10);
+            assertEquals(Double.parseDouble(annotation.getFdr()), Double.parseDouble(found.getFdr()), 1.0e-9);
+        }
+    }
+
+    @Test
+    public void testAnnotatePrefixes() {
+        Random random = new Random(23);
+        Map<String, Set<String>> geneToPathways = new HashMap<>();
+        for (int i = 0; i < 300; i++) {
+            Set<String> pathways = new HashSet<>();
+            for (int j = 0; j < 30; j++) {
+                if (random.nextInt(6) == 0)
+                    pathways.add("R-HSA-" + j);
+            }
+            geneToPathways.put("G" + i, pathways);
+        }
+        EnrichmentEngine engine = new EnrichmentEngine(geneToPathways);
+        List<String> genes = new ArrayList<>();
+        for (int i = 0; i < 120; i++)
+            genes.add("G" + random.nextInt(320)); // Some are unknown
+        int[] prefixLengths = {0, 5, 5, 40, 119, 200};
+        List<List<GeneSetAnnotation>> results = engine.annotatePrefixes(genes, prefixLengths);
+        assertEquals(prefixLengths.length, results.size());
+        for (int i = 0; i < prefixLengths.length; i++) {
+            List<GeneSetAnnotation> expected = engine.annotate(genes.subList(0, Math.min(prefixLengths[i], genes.size())));
+            List<GeneSetAnnotation> actual = results.get(i);
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).getTopic(), actual.get(j).getTopic());
+                assertEquals(expected.get(j).getHitNumber(), actual.get(j).getHitNumber());
+                assertEquals(expected.get(j).getPValue(), actual.get(j).getPValue(), 0.0d);
+                assertEquals(expected.get(j).getFdr(), actual.get(j).getFdr());
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyQuery() {
+        Map<String, Set<String>> geneToPathways = new HashMap<>();
+        geneToPathways.put("A", new HashSet<>(Arrays.asList("R-HSA-1", "R-HSA-2")));
+        geneToPathways.put("B", new HashSet<>());
+        EnrichmentEngine engine = new EnrichmentEngine(geneToPathways);
+        assertEquals(2, engine.getPathwayCount());
+        assertTrue(engine.annotate(Arrays.asList("B", "C")).isEmpty());
+        List<GeneSetAnnotation> annotations = engine.annotate(Arrays.asList("A"));
+        assertEquals(2, annotations.size());
+        // B is in the universe as the annotator counts all keys
+        assertEquals(2, engine.getUniverseSize());
+        assertEquals(0.5d, annotations.get(0).getPValue(), 1.0e-15);
+        // B has no pathway and is not counted in the query
+        assertEquals(0.5d, engine.annotate(Arrays.asList("A", "B")).get(0).getPValue(), 1.0e-15);
+    }
+
+}
@@ -0,0 +1,38 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.Float16;
+
+public class Float16Tests {
+
+    @Test
+    public void testExactValues() {
+        float[] values = {0.0f, 1.0f, -2.0f, 0.5f, 0.25f, 65504.0f, 0x1.0p-24f, 0x1.0p-14f};
+        for (float value : values)
+            assertEquals(value, Float16.round(value), 0.0f);
+        assertEquals(0x3C00, Float16.fromFloat(1.0f));
+        assertEquals(Float.POSITIVE_INFINITY, Float16.round(1.0e6f), 0.0f);
+        assertTrue(Float.isNaN(Float16.round(Float.NaN)));
+        assertEquals(0.0f, Float16.round(1.0e-10f), 0.0f);
+    }
+
+    @Test
+    public void testRounding() {
+        // Ties go to the even mantissa: 1 + 2^-11 is halfway between 1 and 1 + 2^-10
+        assertEquals(1.0f, Float16.round(1.0f + 0x1.0p-11f), 0.0f);
+        assertEquals(1.0f + 0x1.0p-9f, Float16.round(1.0f + 0x1.0p-10f + 0x1.0p-11f), 0.0f);
+        // Scores in [0, 1] keep about three digits and their order
+        float previous = -1.0f;
+        for (int i = 0; i <= 1000; i++) {
+            float value = i / 1000.0f;
+            float rounded = Float16.round(value);
+            assertEquals(value, rounded, 0.0005f);
+            assertTrue(rounded >= previous);
+            previous = rounded;
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+
+public class GeneSymbolTableTests {
+
+    @Test
+    public void testFromIndexDocument() {
+        Document doc = new Document("_id", "not_an_index")
+                .append("EGFR", 0)
+                .append("TP53", 1)
+                .append("BRCA1", 3);
+        GeneSymbolTable table = GeneSymbolTable.fromIndexDocument(doc);
+        assertEquals(4, table.length());
+        assertEquals(3, table.size());
+        assertEquals("TP53", table.getSymbol(1));
+        assertNull(table.getSymbol(2));
+        assertNull(table.getSymbol(4));
+        assertEquals(3, table.getIndex("BRCA1"));
+        assertEquals(-1, table.getIndex("not_an_index"));
+        assertEquals(-1, table.getIndex(null));
+        assertEquals(Arrays.asList("EGFR", "TP53", "BRCA1"), table.getSymbols());
+    }
+
+    @Test
+    public void testLookup() {
+        int total = 20000;
+        String[] symbols = new String[total];
+        for (int i = 0; i < total; i++)
+            symbols[i] = "GENE" + i;
+        GeneSymbolTable table = new GeneSymbolTable(symbols);
+        for (int i = 0; i < total; i++)
+            assertEquals(i, table.getIndex("GENE" + i));
+        assertEquals(-1, table.getIndex("GENE" + total));
+        assertEquals(total, table.toIndexToSymbolMap().size());
+    }
+
+    @Test
+    public void testFindMismatch() {
+        GeneSymbolTable saved = new GeneSymbolTable(new String[] {"EGFR", null, "TP53"});
+        // New genes are appended to GENE_INDEX
+        assertEquals(-1, saved.findMismatch(new GeneSymbolTable(new String[] {"EGFR", "BRCA1", "TP53", "KRAS"})));
+        assertEquals(2, saved.findMismatch(new GeneSymbolTable(new String[] {"EGFR", null, "KRAS"})));
+        assertEquals(2, saved.findMismatch(new GeneSymbolTable(new String[] {"EGFR"})));
+    }
+
+}
@@ -1,7 +1,23 @@
 package org.reactome.idg.pairwise.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import org.bson.Document;
 import org.junit.Test;
+import org.reactome.idg.pairwise.config.MainAppConfig;
+import org.reactome.idg.pairwise.model.PairwiseRelationship;
+import org.reactome.idg.pairwise.service.PairwiseService;
+import org.reactome.idg.pairwise.service.RelationshipRepository;
+import org.reactome.idg.pairwise.util.CombinedScores;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
 
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoClient;
@@ -43,6 +59,56 @@ public class MongoDBTests {
         client.close();
     }
     
+    /**
+     * Compare the aggregation used for numberOnly queries with fetching and counting the lists.
+     */
+    @Test
+    public void benchmarkRelNumberQuery() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+        PairwiseService service = context.getBean(PairwiseService.class);
+        List<String> genes = service.getGeneSymbolTable().getSymbols().stream().limit(500).collect(Collectors.toList());
+        List<String> descIds = Arrays.asList("GTEx|Ovary|Gene_Coexpression",
+                                             "GTEx|Breast-MammaryTissue|Gene_Coexpression",
+                                             "Harmonizome|human|Gene_Similarity|ctddisease");
+        int rounds = 5;
+        List<PairwiseRelationship> found = null;
+        List<PairwiseRelationship> aggregated = null;
+        long time1 = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++)
+            found = service.queryRelNumbersForGenes(genes, descIds, false);
+        long time2 = System.currentTimeMillis();
+        for (int i = 0; i < rounds; i++)
+            aggregated = service.queryRelNumbersForGenes(genes, descIds, true);
+        long time3 = System.currentTimeMillis();
+        System.out.println("Relationships: " + found.size());
+        System.out.println("Find and count: " + (time2 - time1) / rounds + " ms per query");
+        System.out.println("Aggregation: " + (time3 - time2) / rounds + " ms per query");
+        assertEquals(toNumbers(found), toNumbers(aggregated));
+        context.close();
+    }
+
+    @Test
+    public void testRelationshipRepository() {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext(MainAppConfig.class);
+        RelationshipRepository repository = context.getBean(RelationshipRepository.class);
+        Set<String> keys = repository.findKeys("EGF");
+        System.out.println("Keys for EGF: " + keys.size());
+        Document full = repository.findGene("EGF");
+        Set<String> fullKeys = new HashSet<>(full.keySet());
+        fullKeys.remove("_id");
+        assertEquals(fullKeys, keys);
+        CombinedScores combinedScores = repository.findCombinedScores("EGF");
+        assertEquals(CombinedScores.decode(full.get(RelationshipRepository.COMBINED_SCORE)).size(), combinedScores.size());
+        assertNull(repository.findKeys("NOT_A_GENE"));
+        System.out.println(repository.getAccessCounts());
+        context.close();
+    }
+
+    private Map<String, String> toNumbers(List<PairwiseRelationship> rels) {
+        return rels.stream().collect(Collectors.toMap(rel -> rel.getGene() + "\t" + rel.getDataDesc().getId(),
+                                                      rel -> rel.getPosNum() + "\t" + rel.getNegNum()));
+    }
+    
     private void printDocument(Document geneDoc) {
         for (String key : geneDoc.keySet()) {
             Object value = geneDoc.get(key);
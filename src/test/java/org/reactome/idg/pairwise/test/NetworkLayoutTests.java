@@ -0,0 +1,64 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.reactome.idg.pairwise.service.NetworkLayout;
+
+public class NetworkLayoutTests {
+
+    @Test
+    public void testLayout() {
+        // Two cliques of 150 nodes linked by one edge, large enough to be laid out in parallel
+        int nodeNumber = 300;
+        int edgeNumber = 0;
+        int[] sources = new int[2 * 150 * 149 / 2 + 1];
+        int[] targets = new int[sources.length];
+        for (int clique = 0; clique < 2; clique++) {
+            for (int i = 0; i < 150; i++) {
+                for (int j = i + 1; j < 150; j++) {
+                    sources[edgeNumber] = clique * 150 + i;
+                    targets[edgeNumber] = clique * 150 + j;
+                    edgeNumber ++;
+                }
+            }
+        }
+        sources[edgeNumber] = 0;
+        targets[edgeNumber] = 150;
+        double[] positions = NetworkLayout.layout(nodeNumber, sources, targets);
+        assertEquals(2 * nodeNumber, positions.length);
+        for (double position : positions)
+            assertTrue(Double.isFinite(position));
+        // Deterministic
+        assertArrayEquals(positions, NetworkLayout.layout(nodeNumber, sources, targets), 0.0d);
+        // Nodes in the same clique are closer than nodes in different cliques
+        Random random = new Random(11);
+        double within = 0.0d;
+        double between = 0.0d;
+        for (int i = 0; i < 1000; i++) {
+            int node1 = random.nextInt(150);
+            int node2 = random.nextInt(150);
+            within += distance(positions, node1, node2);
+            between += distance(positions, node1, node2 + 150);
+        }
+        assertTrue(within < between);
+    }
+
+    @Test
+    public void testSmallNetworks() {
+        assertEquals(0, NetworkLayout.layout(0, new int[0], new int[0]).length);
+        double[] positions = NetworkLayout.layout(2, new int[] {0}, new int[] {1});
+        assertTrue(distance(positions, 0, 1) > 0.0d);
+    }
+
+    private double distance(double[] positions, int node1, int node2) {
+        double dx = positions[2 * node1] - positions[2 * node2];
+        double dy = positions[2 * node1 + 1] - positions[2 * node2 + 1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.bson.Document;
+import org.junit.Test;
+import org.reactome.idg.pairwise.service.PathwayOverlapGraph;
+
+public class PathwayOverlapGraphTests {
+
+    @Test
+    public void testOverlaps() {
+        Document pathway1 = new Document("_id", "R-HSA-3")
+                .append("weighted_tdl_average", 1.5d)
+                .append("gene_list", Arrays.asList(1, 2, 3))
+                .append("overlapping_pathways", Arrays.asList(
+                        new Document("stId", "R-HSA-9").append("hypergeometricScore", 0.01d).append("numberOfSharedGenes", 2),
+                        new Document("stId", "R-HSA-1").append("hypergeometricScore", 0.5d).append("numberOfSharedGenes", 1)));
+        // No weighted TDL or overlaps
+        Document pathway2 = new Document("_id", "R-HSA-1")
+                .append("gene_list", Collections.singletonList(1));
+        PathwayOverlapGraph graph = PathwayOverlapGraph.create(Arrays.asList(pathway1, pathway2));
+
+        assertEquals(3, graph.size());
+        // Indexed in the order of stable ids
+        assertEquals("R-HSA-1", graph.getStId(0));
+        int from = graph.getIndex("R-HSA-3");
+        int to = graph.getIndex("R-HSA-9");
+        assertTrue(graph.isLoaded(from));
+        assertFalse(graph.isLoaded(to)); // Only listed as an overlapping pathway
+        assertFalse(graph.isLoaded(graph.getIndex("R-HSA-0")));
+        assertEquals(1.5d, graph.getWeightedTDL(from), 0.0d);
+        assertNull(graph.getWeightedTDL(graph.getIndex("R-HSA-1")));
+        assertEquals(3, graph.getGeneNumber(from));
+
+        int overlap = graph.findOverlap(from, to);
+        assertEquals(2, graph.getSharedGenes(overlap));
+        assertEquals(0.01d, graph.getHypergeometricScore(overlap), 0.0d);
+        overlap = graph.findOverlap(from, graph.getIndex("R-HSA-1"));
+        assertEquals(1, graph.getSharedGenes(overlap));
+        // Overlaps of a pathway in the order of indices
+        assertEquals(2, graph.getOverlapEnd(from) - graph.getOverlapStart(from));
+        assertEquals(graph.getIndex("R-HSA-1"), graph.getNeighbor(graph.getOverlapStart(from)));
+        assertEquals(to, graph.getNeighbor(graph.getOverlapStart(from) + 1));
+        // Overlaps are listed as they are in the documents
+        assertEquals(-1, graph.findOverlap(graph.getIndex("R-HSA-1"), from));
+        assertEquals(-1, graph.findOverlap(to, from));
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.types.Binary;
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.RelationshipCodec;
+
+public class RelationshipCodecTests {
+
+    @Test
+    public void testRoundTrip() {
+        List<Integer> indices = Arrays.asList(20510, 3, 127, 128, 3, 0, 16384, 2097152);
+        Binary binary = RelationshipCodec.encode(indices);
+        int[] decoded = RelationshipCodec.decode(binary);
+        // Sorted and de-duplicated
+        assertArrayEquals(new int[] {0, 3, 127, 128, 16384, 20510, 2097152}, decoded);
+        assertEquals(7, RelationshipCodec.size(binary));
+        assertTrue(RelationshipCodec.contains(binary, 16384));
+        assertFalse(RelationshipCodec.contains(binary, 16383));
+        assertFalse(RelationshipCodec.contains(binary, 3000000));
+    }
+
+    @Test
+    public void testLegacyList() {
+        List<Integer> indices = Arrays.asList(5, 1, 3);
+        assertArrayEquals(new int[] {1, 3, 5}, RelationshipCodec.decode(indices));
+        assertEquals(3, RelationshipCodec.size(indices));
+        assertTrue(RelationshipCodec.contains(indices, 3));
+        assertFalse(RelationshipCodec.isEncoded(indices));
+        // The same as the encoded list after migration
+        List<Integer> duplicated = Arrays.asList(5, 1, 3, 5, 1);
+        assertArrayEquals(RelationshipCodec.decode(RelationshipCodec.encode(duplicated)), RelationshipCodec.decode(duplicated));
+        assertEquals(RelationshipCodec.size(RelationshipCodec.encode(duplicated)), RelationshipCodec.size(duplicated));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownType() {
+        RelationshipCodec.contains("1,3,5", 3);
+    }
+
+    @Test
+    public void testEmpty() {
+        Binary binary = RelationshipCodec.encode(new int[0]);
+        assertEquals(0, RelationshipCodec.size(binary));
+        assertEquals(0, RelationshipCodec.decode(binary).length);
+        assertFalse(RelationshipCodec.contains(binary, 0));
+    }
+
+}
@@ -0,0 +1,35 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+import org.reactome.idg.pairwise.service.RelationshipStreamWriter;
+import org.reactome.idg.pairwise.util.GeneSymbolTable;
+
+public class RelationshipStreamWriterTests {
+
+    @Test
+    public void testWrite() throws Exception {
+        GeneSymbolTable symbolTable = new GeneSymbolTable(new String[] {"A", "B", "C"});
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (RelationshipStreamWriter writer = new RelationshipStreamWriter(os, symbolTable, null, false)) {
+            writer.write("A", null, new int[] {1, 2}, null);
+            writer.finish();
+        }
+        assertEquals("[{\"gene\":\"A\",\"posGenes\":[\"B\",\"C\"]}]", os.toString("UTF-8"));
+    }
+
+    @Test
+    public void testUnfinished() throws Exception {
+        // The array is not terminated if writing is broken by an error
+        GeneSymbolTable symbolTable = new GeneSymbolTable(new String[] {"A", "B", "C"});
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (RelationshipStreamWriter writer = new RelationshipStreamWriter(os, symbolTable, null, true)) {
+            writer.write("A", null, new int[] {1, 2}, null);
+        }
+        assertEquals("[{\"gene\":\"A\",\"posNum\":2}", os.toString("UTF-8"));
+    }
+
+}
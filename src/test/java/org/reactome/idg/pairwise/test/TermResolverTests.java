@@ -0,0 +1,57 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.TermResolver;
+
+public class TermResolverTests {
+
+    private TermResolver createResolver() throws IOException {
+        String text = "UniProt\tGeneSym\n" +
+                      "P04637\tTP53\n" +
+                      "P00533\tEGFR\n" +
+                      "Q9UFW8\tCGGBP1\n" +
+                      "A4D0Y5\tC7orf77\n" +
+                      "P0DMV8\tHSPA1A\n" +
+                      "P0DMV9\tHSPA1A\n";
+        return TermResolver.load(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testResolveGene() throws IOException {
+        TermResolver resolver = createResolver();
+        assertEquals("TP53", resolver.resolveGene("TP53"));
+        assertEquals("TP53", resolver.resolveGene("tp53"));
+        assertEquals("TP53", resolver.resolveGene("P04637"));
+        assertEquals("TP53", resolver.resolveGene("P04637-2"));
+        assertEquals("TP53", resolver.resolveGene("p04637"));
+        assertEquals("C7orf77", resolver.resolveGene("C7ORF77"));
+        assertNull(resolver.resolveGene("NOT_A_GENE"));
+        assertNull(resolver.resolveGene(null));
+        assertTrue(resolver.isGene("egfr"));
+        assertFalse(resolver.isGene("P00533"));
+        assertTrue(resolver.isUniProt("P00533-3"));
+    }
+
+    @Test
+    public void testManyToMany() throws IOException {
+        TermResolver resolver = createResolver();
+        assertEquals(Arrays.asList("P0DMV8", "P0DMV9"), resolver.getUniProts("HSPA1A"));
+        assertEquals("P0DMV8", resolver.getUniProt("HSPA1A"));
+        assertEquals("HSPA1A", resolver.getGene("P0DMV9"));
+        // One-to-one views keep the first mapping
+        assertEquals("P0DMV8", resolver.getGeneToUniProt().get("HSPA1A"));
+        assertEquals(6, resolver.getUniProtToGene().size());
+        assertEquals(5, resolver.getGeneToUniProt().size());
+    }
+
+}
@@ -20,10 +20,13 @@ import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.junit.Test;
+import org.reactome.idg.pairwise.model.CombinedScoreGenesRequest;
 import org.reactome.idg.pairwise.model.FeatureForTermInteractorsWrapper;
 import org.reactome.idg.pairwise.model.GeneToPathwaysRequestWrapper;
 import org.reactome.idg.pairwise.model.PEsForInteractorAndDataDescsWrapper;
 import org.reactome.idg.pairwise.model.PairwiseRelRequest;
+import org.reactome.idg.pairwise.model.PathwayNetworkRequest;
+import org.reactome.idg.pairwise.model.PrdSweepRequest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -86,6 +89,38 @@ public class WSTests {
         outputJSON(rtn);
     }
     
+    @Test
+    public void testStreamRelsForGenes() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> genes = Stream.of("EGF","EGFR","TP53","NOTCH1").collect(Collectors.toList());
+        List<String> descIds = Stream.of("GTEx|Ovary|Gene_Coexpression","GTEx|Breast-MammaryTissue|Gene_Coexpression","Harmonizome|human|Gene_Similarity|ctddisease").collect(Collectors.toList());
+        PairwiseRelRequest query = new PairwiseRelRequest(genes, descIds);
+        // Should be the same as the non-streaming version
+        String url = HOST_URL + "/pairwise/genes/false/stream";
+        System.out.println(url + ": " + descIds);
+        String rtn = callHttp(url, HTTP_POST, mapper.writeValueAsString(query));
+        outputJSON(rtn);
+        url = HOST_URL + "/pairwise/uniprots/true/stream";
+        genes = Stream.of("P01133","P00533","P04637","P46531").collect(Collectors.toList());
+        query = new PairwiseRelRequest(genes, descIds);
+        System.out.println(url + ": " + descIds);
+        rtn = callHttp(url, HTTP_POST, mapper.writeValueAsString(query));
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testQueryRelsForTerms() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String url = HOST_URL + "/pairwise/terms/true";
+        // Mixed genes and UniProt ids
+        List<String> terms = Stream.of("EGF","P00533","TP53","P46531").collect(Collectors.toList());
+        List<String> descIds = Stream.of("GTEx|Ovary|Gene_Coexpression","GTEx|Breast-MammaryTissue|Gene_Coexpression","Harmonizome|human|Gene_Similarity|ctddisease").collect(Collectors.toList());
+        PairwiseRelRequest query = new PairwiseRelRequest(terms, descIds);
+        System.out.println(url + ": " + descIds);
+        String rtn = callHttp(url, HTTP_POST, mapper.writeValueAsString(query));
+        outputJSON(rtn);
+    }
+    
     @Test
     public void testQueryHierarchyForTerm() throws Exception {
     	String url = HOST_URL + "/relationships/hierarchyForTerm/NTN1";
@@ -161,6 +196,147 @@ public class WSTests {
     	outputJSON(rtn);
     }
     
+    @Test
+    public void testRelationshipCacheStats() throws Exception {
+        // Query the same gene twice so that the second one is a hit
+        String url = HOST_URL + "/relationships/combinedScoreGenesForTerm/NTN1";
+        callHttp(url, HTTP_GET, null);
+        callHttp(url, HTTP_GET, null);
+        url = HOST_URL + "/pairwise/cache/stats";
+        System.out.println(url);
+        String rtn = callHttp(url, HTTP_GET, null);
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testEnrichGeneSet() throws Exception {
+        String url = HOST_URL + "/relationships/enrichGeneSet";
+        System.out.println(url);
+        // Genes and UniProt accessions can be mixed. The last one cannot be mapped.
+        List<String> terms = Arrays.asList("EGFR", "ERBB2", "GRB2", "SOS1", "P01116", "KRAS", "NOT_A_GENE");
+        String json = new ObjectMapper().writeValueAsString(terms);
+        long time1 = System.currentTimeMillis();
+        String rtn = callHttp(url, HTTP_POST, json);
+        long time2 = System.currentTimeMillis();
+        outputJSON(rtn);
+        System.out.println("Time: " + (time2 - time1) + " ms");
+    }
+    
+    @Test
+    public void testQueryEnrichmentHeatmapForTerm() throws Exception {
+        String url = HOST_URL + "/relationships/enrichmentHeatmapForTerm";
+        System.out.println(url);
+        // All DataDescs of the gene
+        GeneToPathwaysRequestWrapper postData = new GeneToPathwaysRequestWrapper();
+        postData.setTerm("NTN1");
+        String json = new ObjectMapper().writeValueAsString(postData);
+        long time1 = System.currentTimeMillis();
+        String rtn = callHttp(url, HTTP_POST, json);
+        long time2 = System.currentTimeMillis();
+        outputJSON(rtn);
+        System.out.println("Time: " + (time2 - time1) + " ms");
+    }
+    
+    @Test
+    public void testQueryEnrichedPathwaysForCombinedScoreCutoffs() throws Exception {
+        String url = HOST_URL + "/relationships/combinedScoreForTerm/cutoffs";
+        System.out.println(url);
+        PrdSweepRequest postData = new PrdSweepRequest("NTN1", Arrays.asList(0.5d, 0.6d, 0.7d, 0.8d, 0.9d, 0.95d));
+        String json = new ObjectMapper().writeValueAsString(postData);
+        long time1 = System.currentTimeMillis();
+        String rtn = callHttp(url, HTTP_POST, json);
+        long time2 = System.currentTimeMillis();
+        outputJSON(rtn);
+        System.out.println("Time: " + (time2 - time1) + " ms");
+    }
+    
+    @Test
+    public void testPrunedPathwayNetwork() throws Exception {
+        String url = HOST_URL + "/relationships/network/enrichedSecondaryPathaysForTerm/pruned";
+        System.out.println(url);
+        PathwayNetworkRequest postData = new PathwayNetworkRequest("NTN1", Collections.singletonList(0), 0.9d);
+        postData.setMaxNodes(50);
+        postData.setMaxEdgesPerNode(5);
+        postData.setMaxHypergeometricScore(0.01d);
+        String json = new ObjectMapper().writeValueAsString(postData);
+        long time1 = System.currentTimeMillis();
+        String rtn = callHttp(url, HTTP_POST, json);
+        long time2 = System.currentTimeMillis();
+        outputJSON(rtn);
+        System.out.println("Time: " + (time2 - time1) + " ms");
+    }
+    
+    @Test
+    public void testPathwayNetworkLayout() throws Exception {
+        // The second call should use the cached layout
+        String url = HOST_URL + "/relationships/network/enrichedSecondaryPathaysForTerm";
+        System.out.println(url);
+        PathwayNetworkRequest postData = new PathwayNetworkRequest("NTN1", Collections.singletonList(0), 0.9d);
+        postData.setLayout(true);
+        String json = new ObjectMapper().writeValueAsString(postData);
+        for (int i = 0; i < 2; i++) {
+            long time1 = System.currentTimeMillis();
+            String rtn = callHttp(url, HTTP_POST, json);
+            long time2 = System.currentTimeMillis();
+            System.out.println("Length: " + rtn.length() + ", time: " + (time2 - time1) + " ms");
+        }
+        url = HOST_URL + "/pairwise/cache/layout/stats";
+        System.out.println(url);
+        outputJSON(callHttp(url, HTTP_GET, null));
+    }
+    
+    @Test
+    public void testReadiness() throws Exception {
+        String url = HOST_URL + "/health/ready";
+        System.out.println(url);
+        String rtn = callHttp(url, HTTP_GET, null);
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testEnrichmentCacheStats() throws Exception {
+        // The same enrichment twice so that the second one is a hit
+        String url = HOST_URL + "/relationships/enrichedSecondaryPathwaysForTerm";
+        GeneToPathwaysRequestWrapper postData = new GeneToPathwaysRequestWrapper();
+        postData.setTerm("NTN1");
+        postData.setDataDescKeys(Collections.singletonList(0));
+        postData.setPrd(0.9d);
+        String json = new ObjectMapper().writeValueAsString(postData);
+        callHttp(url, HTTP_POST, json);
+        callHttp(url, HTTP_POST, json);
+        url = HOST_URL + "/pairwise/cache/enrichment/stats";
+        System.out.println(url);
+        String rtn = callHttp(url, HTTP_GET, null);
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testQueryCombinedScoreGenesForTerms() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        String url = HOST_URL + "/relationships/combinedScoreGenesForTerms";
+        List<String> terms = Stream.of("NTN1","O95631","TP53").collect(Collectors.toList());
+        CombinedScoreGenesRequest query = new CombinedScoreGenesRequest(terms, 0.9d);
+        System.out.println(url + ": " + terms);
+        String rtn = callHttp(url, HTTP_POST, mapper.writeValueAsString(query));
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testQueryPrdHistogramForTerm() throws Exception {
+        String url = HOST_URL + "/relationships/prdHistogramForTerm/NTN1";
+        System.out.println(url);
+        String rtn = callHttp(url, HTTP_GET, null);
+        outputJSON(rtn);
+    }
+    
+    @Test
+    public void testQueryTopCombinedScoreGenesForTerm() throws Exception {
+        String url = HOST_URL + "/relationships/topCombinedScoreGenesForTerm/NTN1?offset=0&limit=10&minScore=0.5";
+        System.out.println(url);
+        String rtn = callHttp(url, HTTP_GET, null);
+        outputJSON(rtn);
+    }
+    
     @Test
     public void testQueryCombinedScoreGenesForUniprot() throws Exception {
     	String url = HOST_URL + "/relationships/combinedScoreGenesForTerm/O95631";
@@ -0,0 +1,47 @@
+package org.reactome.idg.pairwise.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.reactome.idg.pairwise.util.WeightedLruCache;
+
+public class WeightedLruCacheTests {
+
+    @Test
+    public void testEviction() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(10, value -> value.length());
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        assertEquals("aaaa", cache.get("a")); // a is the most recent now
+        cache.put("c", "cccc");
+        assertNull(cache.get("b"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getWeight());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        // Too heavy to be cached
+        cache.put("d", "ddddddddddd");
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        WeightedLruCache<String, String> cache = new WeightedLruCache<>(100, value -> value.length());
+        cache.put("TP53|x", "12345");
+        cache.put("TP53|y", "12345");
+        cache.put("EGFR|x", "12345");
+        cache.invalidateIf(key -> key.startsWith("TP53|"));
+        assertEquals(1, cache.size());
+        assertEquals(5, cache.getWeight());
+        cache.invalidateAll();
+        assertEquals(0, cache.getWeight());
+        // Disabled
+        cache = new WeightedLruCache<>(0, value -> value.length());
+        cache.put("a", "a");
+        assertNull(cache.get("a"));
+    }
+
+}